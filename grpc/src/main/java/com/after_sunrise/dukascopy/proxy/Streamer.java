@@ -0,0 +1,418 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.after_sunrise.dukascopy.proxy.grpc.BarMessage;
+import com.after_sunrise.dukascopy.proxy.grpc.DukasProxyGrpc;
+import com.after_sunrise.dukascopy.proxy.grpc.StreamRequest;
+import com.after_sunrise.dukascopy.proxy.grpc.SubscriptionMessage;
+import com.after_sunrise.dukascopy.proxy.grpc.TickMessage;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_GRPC_PORT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_LIFECYCLE_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_GRPC_PORT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_LIFECYCLE_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.getPeriodIndex;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Serves the gRPC interface alongside the WebSocket endpoint, on a separate port if configured.
+ * Ticks and bars are streamed to each of the calls as long as the call is ready (HTTP/2 flow control).
+ * Otherwise the latest message is held per instrument (and period), and is delivered once the call becomes ready,
+ * so that slow clients receive the latest values instead of buffering all of them.
+ * <p>
+ * Bars are keyed by the predefined periods, hence the custom periods are neither streamed nor requested.
+ * This component is packaged in the optional gRPC module, and is scanned only if the module is on the classpath.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Streamer extends DukasProxyGrpc.DukasProxyImplBase implements Listener, InitializingBean, DisposableBean {
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private static final Period[] PERIODS = Period.values();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final Configuration configuration;
+
+    /**
+     * Resolved on demand, since the {@link Subscriber} depends on the listeners including this.
+     */
+    private final ObjectProvider<Subscriber> subscriber;
+
+    private final List<Sink<TickMessage>> ticks = new CopyOnWriteArrayList<>();
+
+    private final List<Sink<BarMessage>> bars = new CopyOnWriteArrayList<>();
+
+    private Server server;
+
+    @Autowired
+    public Streamer(Clock clock, Configuration configuration, ObjectProvider<Subscriber> subscriber) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.subscriber = Objects.requireNonNull(subscriber, "Subscriber is required.");
+
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+
+        int port = configuration.getInt(CK_GRPC_PORT, CV_GRPC_PORT);
+
+        if (port <= 0) {
+            return;
+        }
+
+        server = NettyServerBuilder.forPort(port).addService(this).build().start();
+
+        logger.info("Serving gRPC : {}", port);
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        if (server == null) {
+            return;
+        }
+
+        long millis = configuration.getLong(CK_LIFECYCLE_WAIT, CV_LIFECYCLE_WAIT.toMillis());
+
+        server.shutdown();
+
+        if (!server.awaitTermination(millis, MILLISECONDS)) {
+            server.shutdownNow();
+        }
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (ticks.isEmpty()) {
+            return;
+        }
+
+        TickMessage message = TickMessage.newBuilder()
+                .setEpoch(clock.millis())
+                .setInstrument(instrument.name())
+                .setTickScale(instrument.getTickScale())
+                .setTime(tick.getTime())
+                .setAskPrice(tick.getAsk())
+                .setAskVolume(tick.getAskVolume())
+                .setAskTotal(tick.getTotalAskVolume())
+                .setBidPrice(tick.getBid())
+                .setBidVolume(tick.getBidVolume())
+                .setBidTotal(tick.getTotalBidVolume())
+                .build();
+
+        for (Sink<TickMessage> sink : ticks) {
+            sink.offer(instrument.ordinal(), message);
+        }
+
+    }
+
+    @Override
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+
+        if (bars.isEmpty() || getBarKey(instrument, period) < 0 || (askBar == null && bidBar == null)) {
+            return;
+        }
+
+        long time = askBar != null ? askBar.getTime() : bidBar.getTime();
+
+        BarMessage message = BarMessage.newBuilder()
+                .setEpoch(clock.millis())
+                .setInstrument(instrument.name())
+                .setTickScale(instrument.getTickScale())
+                .setPeriodName(period.name())
+                .setPeriodUnit(period.getUnit().name())
+                .setPeriodCount(period.getNumOfUnits())
+                .setTime(time)
+                .setAskOpen(askBar == null ? Double.NaN : askBar.getOpen())
+                .setAskHigh(askBar == null ? Double.NaN : askBar.getHigh())
+                .setAskLow(askBar == null ? Double.NaN : askBar.getLow())
+                .setAskClose(askBar == null ? Double.NaN : askBar.getClose())
+                .setAskVolume(askBar == null ? Double.NaN : askBar.getVolume())
+                .setBidOpen(bidBar == null ? Double.NaN : bidBar.getOpen())
+                .setBidHigh(bidBar == null ? Double.NaN : bidBar.getHigh())
+                .setBidLow(bidBar == null ? Double.NaN : bidBar.getLow())
+                .setBidClose(bidBar == null ? Double.NaN : bidBar.getClose())
+                .setBidVolume(bidBar == null ? Double.NaN : bidBar.getVolume())
+                .build();
+
+        int key = getBarKey(instrument, period);
+
+        for (Sink<BarMessage> sink : bars) {
+            sink.offer(key, message);
+        }
+
+    }
+
+    @Override
+    public void streamTicks(StreamRequest request, StreamObserver<TickMessage> observer) {
+
+        Set<Instrument> instruments = parse(request.getInstrumentsList(), Instrument::valueOf);
+
+        if (instruments == null) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription("Invalid instruments.").asRuntimeException());
+            return;
+        }
+
+        boolean[] keys = new boolean[INSTRUMENTS.length];
+
+        for (Instrument instrument : INSTRUMENTS) {
+            keys[instrument.ordinal()] = instruments.isEmpty() || instruments.contains(instrument);
+        }
+
+        register(ticks, keys, observer);
+
+    }
+
+    @Override
+    public void streamBars(StreamRequest request, StreamObserver<BarMessage> observer) {
+
+        Set<Instrument> instruments = parse(request.getInstrumentsList(), Instrument::valueOf);
+
+        Set<Period> periods = parse(request.getPeriodsList(), Period::valueOf);
+
+        if (instruments == null || periods == null || periods.stream().anyMatch(p -> getPeriodIndex(p) < 0)) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription("Invalid instruments or periods.")
+                    .asRuntimeException());
+            return;
+        }
+
+        boolean[] keys = new boolean[INSTRUMENTS.length * PERIODS.length];
+
+        for (Instrument instrument : INSTRUMENTS) {
+            for (Period period : PERIODS) {
+                keys[getBarKey(instrument, period)] =
+                        (instruments.isEmpty() || instruments.contains(instrument))
+                                && (periods.isEmpty() || periods.contains(period));
+            }
+        }
+
+        register(bars, keys, observer);
+
+    }
+
+    @VisibleForTesting
+    <T> void register(Collection<Sink<T>> sinks, boolean[] keys, StreamObserver<T> observer) {
+
+        ServerCallStreamObserver<T> call = (ServerCallStreamObserver<T>) observer;
+
+        Sink<T> sink = new Sink<>(call, keys);
+
+        call.setOnCancelHandler(() -> {
+
+            sinks.remove(sink);
+
+            logger.debug("Cancelled stream : {}", sinks.size());
+
+        });
+
+        call.setOnReadyHandler(sink::drain);
+
+        sinks.add(sink);
+
+        logger.debug("Registered stream : {}", sinks.size());
+
+    }
+
+    /**
+     * @return Index of the instrument and the predefined period, or negative for the custom period.
+     */
+    @VisibleForTesting
+    static int getBarKey(Instrument instrument, Period period) {
+
+        int index = getPeriodIndex(period);
+
+        return index < 0 ? -1 : instrument.ordinal() * PERIODS.length + index;
+
+    }
+
+    /**
+     * @return Parsed values, empty for all, or {@code null} if invalid.
+     */
+    @VisibleForTesting
+    static <E> Set<E> parse(List<String> names, Function<String, E> parser) {
+
+        Set<E> values = new HashSet<>();
+
+        try {
+            names.stream().map(String::trim).map(parser).map(Objects::requireNonNull).forEach(values::add);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return values;
+
+    }
+
+    @Override
+    public void getSubscription(SubscriptionMessage request, StreamObserver<SubscriptionMessage> observer) {
+        reply(observer, subscriber.getObject().getSubscription());
+    }
+
+    @Override
+    public void addSubscription(SubscriptionMessage request, StreamObserver<SubscriptionMessage> observer) {
+        modify(request, observer, true);
+    }
+
+    @Override
+    public void removeSubscription(SubscriptionMessage request, StreamObserver<SubscriptionMessage> observer) {
+        modify(request, observer, false);
+    }
+
+    @VisibleForTesting
+    void modify(SubscriptionMessage request, StreamObserver<SubscriptionMessage> observer, boolean add) {
+
+        Set<Instrument> instruments = parse(request.getInstrumentsList(), Instrument::valueOf);
+
+        if (instruments == null) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription("Invalid instruments.").asRuntimeException());
+            return;
+        }
+
+        Subscription message = ImmutableSubscription.builder()
+                .id(request.getId().isEmpty() ? null : request.getId())
+                .epoch(request.getEpoch() == 0 ? null : Instant.ofEpochMilli(request.getEpoch()))
+                .instruments(instruments)
+                .build();
+
+        Subscriber s = subscriber.getObject();
+
+        reply(observer, add ? s.addSubscription(message) : s.removeSubscription(message));
+
+    }
+
+    @VisibleForTesting
+    void reply(StreamObserver<SubscriptionMessage> observer, Subscription subscription) {
+
+        SubscriptionMessage.Builder builder = SubscriptionMessage.newBuilder();
+
+        if (subscription.getId() != null) {
+            builder.setId(subscription.getId());
+        }
+
+        if (subscription.getEpoch() != null) {
+            builder.setEpoch(subscription.getEpoch().toEpochMilli());
+        }
+
+        if (subscription.getSuccess() != null) {
+            builder.setSuccess(subscription.getSuccess());
+        }
+
+        if (subscription.getInstruments() != null) {
+            builder.addAllInstruments(subscription.getInstruments().stream()
+                    .map(Instrument::name).collect(Collectors.toList()));
+        }
+
+        observer.onNext(builder.build());
+
+        observer.onCompleted();
+
+    }
+
+    /**
+     * Streaming call, holding the latest message per key while the call is not ready.
+     */
+    @VisibleForTesting
+    static class Sink<T> {
+
+        private final ServerCallStreamObserver<T> call;
+
+        private final boolean[] keys;
+
+        private final Object[] pendings;
+
+        private int pending;
+
+        Sink(ServerCallStreamObserver<T> call, boolean[] keys) {
+            this.call = call;
+            this.keys = keys;
+            this.pendings = new Object[keys.length];
+        }
+
+        synchronized void offer(int key, T message) {
+
+            if (!keys[key] || call.isCancelled()) {
+                return;
+            }
+
+            if (pending == 0 && call.isReady()) {
+
+                call.onNext(message);
+
+                return;
+
+            }
+
+            if (pendings[key] == null) {
+                pending++;
+            }
+
+            pendings[key] = message; // Conflate with the latest.
+
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void drain() {
+
+            for (int key = 0; key < pendings.length && pending > 0 && call.isReady(); key++) {
+
+                Object message = pendings[key];
+
+                if (message == null) {
+                    continue;
+                }
+
+                pendings[key] = null;
+
+                pending--;
+
+                call.onNext((T) message);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ANALYTICS_BUCKETS;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ANALYTICS_DECAY;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ANALYTICS_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ANALYTICS_WINDOW;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ANALYTICS_BUCKETS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ANALYTICS_DECAY;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ANALYTICS_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ANALYTICS_WINDOW;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_ANALYTICS;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Derives the per-instrument statistics incrementally from the ticks, and publishes the updated ones periodically.
+ * <ul>
+ * <li>Mid price and spread of the latest tick.</li>
+ * <li>Exponentially weighted moving average of the log returns of the mid price, and its volatility.</li>
+ * <li>Tick rate and volume weighted average price within the time window, aggregated in fixed time buckets.</li>
+ * </ul>
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Analytics implements Listener, InitializingBean, DisposableBean, Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final Configuration configuration;
+
+    private final SimpMessageSendingOperations template;
+
+    private final State[] states;
+
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public Analytics(Clock clock, Configuration configuration, SimpMessageSendingOperations template) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        double decay = configuration.getDouble(CK_ANALYTICS_DECAY, CV_ANALYTICS_DECAY);
+
+        long window = configuration.getLong(CK_ANALYTICS_WINDOW, CV_ANALYTICS_WINDOW.toMillis());
+
+        int buckets = Math.max(configuration.getInt(CK_ANALYTICS_BUCKETS, CV_ANALYTICS_BUCKETS), 1);
+
+        this.states = new State[Instrument.values().length];
+
+        for (Instrument instrument : Instrument.values()) {
+            states[instrument.ordinal()] = new State(instrument, decay, window, buckets);
+        }
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        long millis = configuration.getLong(CK_ANALYTICS_INTERVAL, CV_ANALYTICS_INTERVAL.toMillis());
+
+        if (millis <= 0) {
+            return;
+        }
+
+        executor.scheduleAtFixedRate(this, millis, millis, MILLISECONDS);
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, false);
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        State state = states[instrument.ordinal()];
+
+        synchronized (state) {
+            state.update(tick);
+        }
+
+    }
+
+    @Override
+    public void run() {
+
+        try {
+
+            long now = clock.millis();
+
+            for (State state : states) {
+
+                Map<String, Object> map;
+
+                synchronized (state) {
+                    map = state.convert(now);
+                }
+
+                if (map != null) {
+                    template.convertAndSend(TOPIC_ANALYTICS, map);
+                }
+
+            }
+
+        } catch (RuntimeException e) {
+
+            logger.warn("Failed to publish analytics.", e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    static class State {
+
+        private final Instrument instrument;
+
+        private final double decay;
+
+        private final long bucketMillis;
+
+        private final long windowMillis;
+
+        private final long[] bucketIds;
+
+        private final long[] bucketCounts;
+
+        private final double[] bucketNotionals;
+
+        private final double[] bucketVolumes;
+
+        private long time;
+
+        private double ask;
+
+        private double bid;
+
+        private double mid;
+
+        private double average;
+
+        private double variance;
+
+        private long count;
+
+        private double notional;
+
+        private double volume;
+
+        private boolean updated;
+
+        State(Instrument instrument, double decay, long windowMillis, int buckets) {
+            this.instrument = instrument;
+            this.decay = decay;
+            this.bucketMillis = Math.max(windowMillis / buckets, 1);
+            this.windowMillis = bucketMillis * buckets;
+            this.bucketIds = new long[buckets];
+            this.bucketCounts = new long[buckets];
+            this.bucketNotionals = new double[buckets];
+            this.bucketVolumes = new double[buckets];
+        }
+
+        void update(ITick tick) {
+
+            double m = (tick.getAsk() + tick.getBid()) * 0.5;
+
+            if (mid > 0 && m > 0) {
+
+                double r = Math.log(m / mid);
+
+                average = decay * average + (1 - decay) * r;
+
+                variance = decay * variance + (1 - decay) * (r - average) * (r - average);
+
+            }
+
+            time = tick.getTime();
+            ask = tick.getAsk();
+            bid = tick.getBid();
+            mid = m;
+
+            long id = expire(time);
+
+            int index = (int) (id % bucketIds.length);
+
+            double n = tick.getAsk() * tick.getAskVolume() + tick.getBid() * tick.getBidVolume();
+
+            double v = tick.getAskVolume() + tick.getBidVolume();
+
+            bucketCounts[index]++;
+            bucketNotionals[index] += n;
+            bucketVolumes[index] += v;
+
+            count++;
+            notional += n;
+            volume += v;
+
+            updated = true;
+
+        }
+
+        /**
+         * Evicts the buckets which are out of the window ending at the given time, and returns the current bucket id.
+         * The buckets are scanned only when entering into a new bucket, hence the update is O(1) amortized.
+         */
+        long expire(long millis) {
+
+            long id = millis / bucketMillis;
+
+            int index = (int) (id % bucketIds.length);
+
+            if (bucketIds[index] != id) {
+
+                for (int i = 0; i < bucketIds.length; i++) {
+
+                    if (bucketIds[i] > id - bucketIds.length) {
+                        continue;
+                    }
+
+                    count -= bucketCounts[i];
+                    notional -= bucketNotionals[i];
+                    volume -= bucketVolumes[i];
+
+                    bucketIds[i] = 0;
+                    bucketCounts[i] = 0;
+                    bucketNotionals[i] = 0;
+                    bucketVolumes[i] = 0;
+
+                }
+
+                bucketIds[index] = id;
+
+            }
+
+            return id;
+
+        }
+
+        Map<String, Object> convert(long now) {
+
+            if (!updated) {
+                return null;
+            }
+
+            updated = false;
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("xe", now);
+            map.put("in", instrument.name());
+            map.put("is", instrument.getTickScale());
+            map.put("tt", time);
+            map.put("mp", mid);
+            map.put("sp", ask - bid);
+            map.put("er", average);
+            map.put("ev", Math.sqrt(variance));
+            map.put("tr", count * 1000.0 / windowMillis);
+            map.put("vv", volume);
+
+            if (volume > 0) {
+                map.put("vw", notional / volume);
+            }
+
+            return map;
+
+        }
+
+    }
+
+}
@@ -1,8 +1,7 @@
 package com.after_sunrise.dukascopy.proxy;
 
-import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.system.IClient;
-import com.dukascopy.api.system.ISystemListener;
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.configuration2.ImmutableConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,187 +9,110 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.util.DigestUtils;
+import org.springframework.context.annotation.Lazy;
 
-import java.io.ByteArrayInputStream;
-import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
-
-import static com.after_sunrise.dukascopy.proxy.Config.CK_CONNECTION_WAIT;
-import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_JNLP;
-import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_PASS;
-import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_USER;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CONNECTION_ENABLED;
 import static com.after_sunrise.dukascopy.proxy.Config.CK_LIFECYCLE_WAIT;
-import static com.after_sunrise.dukascopy.proxy.Config.CV_CONNECTION_WAIT;
-import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_JNLP;
-import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_PASS;
-import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_USER;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SHARD_COUNT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CONNECTION_ENABLED;
 import static com.after_sunrise.dukascopy.proxy.Config.CV_LIFECYCLE_WAIT;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SHARD_COUNT;
 
 /**
  * @author takanori.takase
  * @version 0.0.0
  */
+@Lazy(false) // Connect eagerly, even with the lazy initialization.
 @SpringBootApplication
-public class Application implements ISystemListener, InitializingBean, DisposableBean, ThreadFactory, UncaughtExceptionHandler, Runnable {
+public class Application implements InitializingBean, DisposableBean {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final ImmutableConfiguration configuration;
 
-    private final IClient client;
-
-    private final IStrategy strategy;
+    private final Snapshot snapshot;
 
-    private final ThreadFactory delegate;
-
-    private final ScheduledExecutorService executor;
+    private final List<Connection> connections;
 
     @Autowired
-    public Application(ImmutableConfiguration configuration, IClient client, IStrategy strategy) {
+    public Application(ImmutableConfiguration configuration, IClient client,
+                       Subscriber subscriber, Snapshot snapshot, Failover failover) throws ReflectiveOperationException {
 
         this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
 
-        this.client = Objects.requireNonNull(client, "IClient is required.");
-
-        this.strategy = Objects.requireNonNull(strategy, "IStrategy is required.");
+        this.snapshot = Objects.requireNonNull(snapshot, "Snapshot is required.");
 
-        this.delegate = Executors.defaultThreadFactory();
+        Objects.requireNonNull(client, "IClient is required.");
 
-        this.executor = Executors.newSingleThreadScheduledExecutor(this);
+        Objects.requireNonNull(subscriber, "Subscriber is required.");
 
-    }
+        Objects.requireNonNull(failover, "Failover is required.");
 
-    @Override
-    public Thread newThread(Runnable r) {
+        List<Connection> list = new ArrayList<>();
 
-        Thread thread = delegate.newThread(r);
+        list.add(new Connection(configuration, 0, client, subscriber));
 
-        thread.setDaemon(true);
+        int shards = Math.max(configuration.getInt(CK_SHARD_COUNT, CV_SHARD_COUNT), 1);
 
-        thread.setName(getClass().getSimpleName());
+        for (int i = 1; i < shards; i++) {
+            list.add(new Connection(configuration, i, createClient(client), subscriber.createShard(i)));
+        }
 
-        thread.setUncaughtExceptionHandler(this);
+        if (failover.isEnabled()) {
+            list.add(new Connection(configuration, shards, createClient(client), subscriber.createShard(shards)));
+        }
 
-        return thread;
+        this.connections = Collections.unmodifiableList(list);
 
     }
 
-    @Override
-    public void uncaughtException(Thread t, Throwable e) {
-
-        logger.error("Uncaught exception : {}", t, e);
-
+    /**
+     * Creates a separate client instance for the additional connection, since the factory only provides a singleton.
+     */
+    @VisibleForTesting
+    IClient createClient(IClient client) throws ReflectiveOperationException {
+        return client.getClass().getDeclaredConstructor().newInstance();
     }
 
     @Override
     public void afterPropertiesSet() {
 
-        logger.info("Initializing application.");
-
-        client.setSystemListener(this);
-
-        executor.execute(this);
-
-    }
-
-    @Override
-    public void destroy() throws InterruptedException {
-
-        long millis = configuration.getLong(CK_LIFECYCLE_WAIT, CV_LIFECYCLE_WAIT.toMillis());
-
-        logger.info("Terminating application : await = {} ms", millis);
-
-        executor.shutdownNow();
-
-        executor.awaitTermination(millis, MILLISECONDS);
-
-        client.disconnect();
-
-        logger.info("Terminated application. (graceful = {})", executor.isTerminated());
-
-    }
-
-    @Override
-    public synchronized void onConnect() {
+        if (!configuration.getBoolean(CK_CONNECTION_ENABLED, CV_CONNECTION_ENABLED)) {
 
-        logger.info("IClient connected.");
+            logger.info("Initializing application without connections.");
 
-        if (executor.isShutdown()) {
             return;
-        }
-
-        long id = client.startStrategy(strategy);
-
-        logger.info("Started strategy : [{}] {}", id, strategy);
-
-    }
-
-    @Override
-    public synchronized void onDisconnect() {
 
-        logger.info("IClient disconnected.");
-
-        client.getStartedStrategies().forEach((id, strategy) -> {
-
-            client.stopStrategy(id);
-
-            logger.info("Stopped strategy : [{}] {}", id, strategy);
-
-        });
-
-        if (executor.isShutdown()) {
-            return;
         }
 
-        executor.execute(this); // Attempt reconnect.
+        logger.info("Initializing application. (connections = {})", connections.size());
+
+        connections.forEach(Connection::start);
 
     }
 
     @Override
-    public void run() {
-
-        String jnlp = configuration.getString(CK_CREDENTIAL_JNLP, CV_CREDENTIAL_JNLP);
-        String user = configuration.getString(CK_CREDENTIAL_USER, CV_CREDENTIAL_USER);
-        String pass = configuration.getString(CK_CREDENTIAL_PASS, CV_CREDENTIAL_PASS);
-
-        try {
-
-            String hash = DigestUtils.md5DigestAsHex(new ByteArrayInputStream(pass.getBytes(UTF_8)));
-
-            logger.info("IClient connecting... (url={}, user={}, pass=MD5:{})", jnlp, user, hash);
-
-            client.connect(jnlp, user, pass);
-
-        } catch (Exception e) {
-
-            if (executor.isShutdown()) {
-                return;
-            }
+    public void destroy() throws InterruptedException {
 
-            long millis = configuration.getLong(CK_CONNECTION_WAIT, CV_CONNECTION_WAIT.toMillis());
+        long millis = configuration.getLong(CK_LIFECYCLE_WAIT, CV_LIFECYCLE_WAIT.toMillis());
 
-            logger.warn("IClient connection failure. Reconnecting in {} ms...", millis, e);
+        logger.info("Terminating application : await = {} ms", millis);
 
-            executor.schedule(this, millis, MILLISECONDS);
+        boolean graceful = true;
 
+        for (Connection connection : connections) {
+            graceful &= connection.stop(millis);
         }
 
-    }
+        snapshot.save();
 
-    @Override
-    public void onStart(long processId) {
-        logger.info("IClient process started : {}", processId);
-    }
+        logger.info("Terminated application. (graceful = {})", graceful);
 
-    @Override
-    public void onStop(long processId) {
-        logger.info("IClient process stopped : {}", processId);
     }
 
 }
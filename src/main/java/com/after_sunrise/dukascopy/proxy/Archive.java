@@ -0,0 +1,536 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.after_sunrise.dukascopy.proxy.Codec.readDeltas;
+import static com.after_sunrise.dukascopy.proxy.Codec.readDoubles;
+import static com.after_sunrise.dukascopy.proxy.Codec.writeDeltas;
+import static com.after_sunrise.dukascopy.proxy.Codec.writeDoubles;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_BLOCK;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_SPAN;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ARCHIVE_BLOCK;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ARCHIVE_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ARCHIVE_SPAN;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_ARCHIVE;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Archives all of the published ticks, into the files per instrument and per day (UTC).
+ * <ul>
+ * <li>Data file ({@code yyyyMMdd.tck}) : Compressed blocks of the columns of the ticks. Times are delta-encoded,
+ * and prices are delta-encoded in the number of ticks scaled by {@link Instrument#getTickScale()}.</li>
+ * <li>Index file ({@code yyyyMMdd.idx}) : Time range and file offset of each block,
+ * for seeking directly to the blocks to decode.</li>
+ * </ul>
+ * Ticks are buffered in memory per instrument, and are written when the block is full, the day changes, or
+ * periodically. Range queries are streamed as JSON lines, decoding the overlapping blocks only.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@RestController
+public class Archive implements Listener, InitializingBean, DisposableBean, Runnable {
+
+    static final String CONTENT_TYPE = "application/x-ndjson";
+
+    static final String SUFFIX_DATA = ".tck";
+
+    static final String SUFFIX_INDEX = ".idx";
+
+    /**
+     * Minimum time, maximum time and offset of the block.
+     */
+    static final int INDEX_SIZE = Long.BYTES * 3;
+
+    /**
+     * Compressed length, count and scale of the block.
+     */
+    static final int HEADER_SIZE = Integer.BYTES * 3;
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Configuration configuration;
+
+    private final Gson gson;
+
+    private final AtomicReferenceArray<Column> columns = new AtomicReferenceArray<>(INSTRUMENTS.length);
+
+    private final ScheduledExecutorService executor;
+
+    private volatile Path root;
+
+    private int capacity;
+
+    @Autowired
+    public Archive(Configuration configuration, Gson gson) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.gson = Objects.requireNonNull(gson, "Gson is required.");
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        String path = configuration.getString(CK_ARCHIVE_PATH, CV_ARCHIVE_PATH);
+
+        if (StringUtils.isBlank(path)) {
+            return;
+        }
+
+        capacity = Math.max(configuration.getInt(CK_ARCHIVE_BLOCK, CV_ARCHIVE_BLOCK), 2);
+
+        root = Paths.get(path).toAbsolutePath();
+
+        long millis = configuration.getLong(CK_ARCHIVE_INTERVAL, CV_ARCHIVE_INTERVAL.toMillis());
+
+        executor.scheduleWithFixedDelay(this, millis, millis, MILLISECONDS);
+
+        logger.info("Archiving ticks : {} (block={})", root, capacity);
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        executor.execute(this); // Flush the remaining.
+
+        shutdown(configuration, executor, false);
+
+    }
+
+    /**
+     * Writes the partially filled blocks.
+     */
+    @Override
+    public void run() {
+
+        for (int i = 0; i < columns.length(); i++) {
+
+            Column column = columns.get(i);
+
+            if (column == null) {
+                continue;
+            }
+
+            Block block;
+
+            synchronized (column) {
+                block = column.drain();
+            }
+
+            if (block != null) {
+                write(INSTRUMENTS[i], block);
+            }
+
+        }
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (root == null) {
+            return;
+        }
+
+        Column column = columns.get(instrument.ordinal());
+
+        if (column == null) {
+
+            columns.compareAndSet(instrument.ordinal(), null, new Column(capacity, instrument.getTickScale()));
+
+            column = columns.get(instrument.ordinal());
+
+        }
+
+        Block block;
+
+        synchronized (column) {
+            block = column.append(tick.getTime(),
+                    tick.getAsk(), tick.getBid(), tick.getAskVolume(), tick.getBidVolume());
+        }
+
+        if (block != null && !executor.isShutdown()) {
+            executor.execute(() -> write(instrument, block));
+        }
+
+    }
+
+    @VisibleForTesting
+    Path getPath(Instrument instrument, long day, String suffix) {
+        return root.resolve(instrument.name()).resolve(FORMAT.format(Instant.ofEpochMilli(day * DAY)) + suffix);
+    }
+
+    /**
+     * Appends the block to the data file, then the index to the index file, so that the indexed blocks are complete.
+     */
+    @VisibleForTesting
+    void write(Instrument instrument, Block block) {
+
+        Path data = getPath(instrument, block.day, SUFFIX_DATA);
+
+        Path index = getPath(instrument, block.day, SUFFIX_INDEX);
+
+        try {
+
+            byte[] bytes = block.encode();
+
+            Files.createDirectories(data.getParent());
+
+            long offset;
+
+            try (FileChannel channel = FileChannel.open(data, CREATE, WRITE)) {
+
+                offset = channel.size();
+
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+                buffer.putInt(bytes.length).putInt(block.size).putInt(block.scale).put(bytes).flip();
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+
+            }
+
+            try (FileChannel channel = FileChannel.open(index, CREATE, WRITE, APPEND)) {
+
+                ByteBuffer buffer = ByteBuffer.allocate(INDEX_SIZE);
+                buffer.putLong(block.minTime).putLong(block.maxTime).putLong(offset).flip();
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+            }
+
+            logger.trace("Archived block : {} (count={}, bytes={})", data, block.size, bytes.length);
+
+        } catch (IOException | RuntimeException e) {
+
+            logger.warn("Failed to archive : {} (count={})", data, block.size, e);
+
+        }
+
+    }
+
+    /**
+     * Streams the archived ticks within the time range [from, to), as JSON lines.
+     */
+    @GetMapping(path = ENDPOINT_ARCHIVE + "/tick/{instrument}", produces = CONTENT_TYPE)
+    public ResponseEntity<StreamingResponseBody> getTicks(@PathVariable Instrument instrument,
+                                                          @RequestParam("from") long from,
+                                                          @RequestParam("to") long to) {
+
+        if (root == null || instrument == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        long span = configuration.getLong(CK_ARCHIVE_SPAN, CV_ARCHIVE_SPAN.toMillis());
+
+        if (to <= from || to - from > span) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        return ResponseEntity.ok(output -> query(instrument, from, to, output));
+
+    }
+
+    @VisibleForTesting
+    void query(Instrument instrument, long from, long to, OutputStream output) throws IOException {
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+
+        for (long day = Math.floorDiv(from, DAY); day <= Math.floorDiv(to - 1, DAY); day++) {
+
+            Path data = getPath(instrument, day, SUFFIX_DATA);
+
+            Path index = getPath(instrument, day, SUFFIX_INDEX);
+
+            if (!Files.isReadable(index) || !Files.isReadable(data)) {
+                continue;
+            }
+
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+
+            try (FileChannel channel = FileChannel.open(data, READ)) {
+
+                while (entries.remaining() >= INDEX_SIZE) {
+
+                    long minTime = entries.getLong();
+
+                    long maxTime = entries.getLong();
+
+                    long offset = entries.getLong();
+
+                    if (maxTime < from || minTime >= to) {
+                        continue;
+                    }
+
+                    channel.position(offset);
+
+                    read(instrument, Channels.newInputStream(channel), from, to, writer);
+
+                }
+
+            }
+
+        }
+
+        writer.flush();
+
+    }
+
+    @VisibleForTesting
+    void read(Instrument instrument, InputStream stream, long from, long to, Writer writer) throws IOException {
+
+        DataInputStream header = new DataInputStream(stream);
+
+        int length = header.readInt();
+
+        int count = header.readInt();
+
+        int scale = header.readInt();
+
+        byte[] bytes = new byte[length];
+
+        header.readFully(bytes);
+
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+
+        long[] times = readDeltas(in, count);
+
+        long[] asks = readDeltas(in, count);
+
+        long[] bids = readDeltas(in, count);
+
+        double[] askVolumes = readDoubles(in, count);
+
+        double[] bidVolumes = readDoubles(in, count);
+
+        for (int i = 0; i < count; i++) {
+
+            if (times[i] < from || times[i] >= to) {
+                continue;
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("in", instrument.name());
+            map.put("is", scale);
+            map.put("tt", times[i]);
+            map.put("ap", BigDecimal.valueOf(asks[i], scale));
+            map.put("av", askVolumes[i]);
+            map.put("bp", BigDecimal.valueOf(bids[i], scale));
+            map.put("bv", bidVolumes[i]);
+
+            gson.toJson(map, writer);
+
+            writer.write('\n');
+
+        }
+
+    }
+
+    /**
+     * Ticks of an instrument being buffered for the next block, in primitive columns.
+     */
+    @VisibleForTesting
+    static class Column {
+
+        private final long[] times;
+
+        private final long[] asks;
+
+        private final long[] bids;
+
+        private final double[] askVolumes;
+
+        private final double[] bidVolumes;
+
+        private final int scale;
+
+        private final double multiplier;
+
+        private long day;
+
+        private int size;
+
+        Column(int capacity, int scale) {
+            this.times = new long[capacity];
+            this.asks = new long[capacity];
+            this.bids = new long[capacity];
+            this.askVolumes = new double[capacity];
+            this.bidVolumes = new double[capacity];
+            this.scale = scale;
+            this.multiplier = Math.pow(10, scale);
+        }
+
+        /**
+         * @return Block to be written, if the day has changed or if the block is full.
+         */
+        Block append(long time, double ask, double bid, double askVolume, double bidVolume) {
+
+            long today = Math.floorDiv(time, DAY);
+
+            Block block = size > 0 && today != day ? drain() : null;
+
+            day = today;
+            times[size] = time;
+            asks[size] = Math.round(ask * multiplier);
+            bids[size] = Math.round(bid * multiplier);
+            askVolumes[size] = askVolume;
+            bidVolumes[size] = bidVolume;
+            size++;
+
+            return block != null || size < times.length ? block : drain();
+
+        }
+
+        Block drain() {
+
+            if (size == 0) {
+                return null;
+            }
+
+            Block block = new Block(day, size, scale, Arrays.copyOf(times, size), Arrays.copyOf(asks, size),
+                    Arrays.copyOf(bids, size), Arrays.copyOf(askVolumes, size), Arrays.copyOf(bidVolumes, size));
+
+            size = 0;
+
+            return block;
+
+        }
+
+    }
+
+    @VisibleForTesting
+    static class Block {
+
+        private final long day;
+
+        private final int size;
+
+        private final int scale;
+
+        private final long[] times;
+
+        private final long[] asks;
+
+        private final long[] bids;
+
+        private final double[] askVolumes;
+
+        private final double[] bidVolumes;
+
+        private final long minTime;
+
+        private final long maxTime;
+
+        Block(long day, int size, int scale, long[] times, long[] asks, long[] bids,
+              double[] askVolumes, double[] bidVolumes) {
+            this.day = day;
+            this.size = size;
+            this.scale = scale;
+            this.times = times;
+            this.asks = asks;
+            this.bids = bids;
+            this.askVolumes = askVolumes;
+            this.bidVolumes = bidVolumes;
+            this.minTime = Arrays.stream(times).min().orElse(Long.MAX_VALUE);
+            this.maxTime = Arrays.stream(times).max().orElse(Long.MIN_VALUE);
+        }
+
+        /**
+         * @return Compressed columns : times, asks and bids as zigzag variable-length deltas, then ask and bid volumes.
+         */
+        byte[] encode() throws IOException {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * Long.BYTES);
+
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+
+                writeDeltas(out, times, size);
+
+                writeDeltas(out, asks, size);
+
+                writeDeltas(out, bids, size);
+
+                writeDoubles(out, askVolumes, size);
+
+                writeDoubles(out, bidVolumes, size);
+
+            }
+
+            return bytes.toByteArray();
+
+        }
+
+    }
+
+}
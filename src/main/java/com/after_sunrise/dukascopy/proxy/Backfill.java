@@ -0,0 +1,293 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IHistory;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_BACKFILL_LIMIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_BACKFILL_THREADS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_BACKFILL_LIMIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_BACKFILL_THREADS;
+import static com.after_sunrise.dukascopy.proxy.Config.newThreadFactory;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+
+/**
+ * Replays the ticks missed while disconnected, by querying {@link IHistory} for the range between the last published
+ * tick and the latest tick after reconnecting. Live ticks of the instrument being filled are buffered, and released
+ * after the replay, so that the ticks are published in order without any loss nor duplicate.
+ * <p>
+ * The range starts from the millisecond of the last published tick, since multiple ticks may share the same time.
+ * Ticks of that millisecond are identified by their prices, and only the ones not yet published are replayed.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Backfill implements DisposableBean {
+
+    /**
+     * Callback for publishing the ticks, either replayed from history or released from the live buffer.
+     */
+    public interface Publisher {
+
+        void publish(Instrument instrument, ITick tick, boolean replay);
+
+    }
+
+    private static final int SAME_TIME_CAPACITY = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Configuration configuration;
+
+    private final Mark[] marks = Stream.of(Instrument.values()).map(i -> new Mark()).toArray(Mark[]::new);
+
+    private final ConcurrentMap<Instrument, Buffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public Backfill(Configuration configuration) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.executor = Executors.newFixedThreadPool(configuration.getInt(CK_BACKFILL_THREADS, CV_BACKFILL_THREADS),
+                newThreadFactory(getClass(), true));
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, true);
+
+    }
+
+    /**
+     * Records the tick published, which will be the lower bound of the next backfill.
+     */
+    public void record(Instrument instrument, ITick tick) {
+        marks[instrument.ordinal()].record(tick.getTime(), tick.getAsk(), tick.getBid());
+    }
+
+    @VisibleForTesting
+    long getRecorded(Instrument instrument) {
+        return marks[instrument.ordinal()].copy().time;
+    }
+
+    /**
+     * Buffers the live tick if the instrument is being filled.
+     *
+     * @return {@code true} if buffered, in which case the caller shall not publish the tick by itself.
+     */
+    public boolean offer(Instrument instrument, ITick tick) {
+
+        Buffer buffer = buffers.get(instrument);
+
+        return buffer != null && buffer.offer(tick);
+
+    }
+
+    /**
+     * Starts filling the instruments in parallel. The live buffers are installed before returning, hence this method
+     * is expected to be called from the strategy thread before any of the live ticks are delivered.
+     */
+    public void start(IContext context, Collection<Instrument> instruments, Publisher publisher) {
+
+        long limit = configuration.getLong(CK_BACKFILL_LIMIT, CV_BACKFILL_LIMIT.toMillis());
+
+        if (limit <= 0) {
+            return;
+        }
+
+        for (Instrument instrument : instruments) {
+
+            Mark last = marks[instrument.ordinal()].copy();
+
+            if (last.time <= 0) {
+                continue; // Never published.
+            }
+
+            Buffer buffer = new Buffer(instrument);
+
+            if (buffers.putIfAbsent(instrument, buffer) != null) {
+                continue; // Previous backfill still in progress.
+            }
+
+            executor.execute(() -> fill(context.getHistory(), buffer, last, limit, publisher));
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void fill(IHistory history, Buffer buffer, Mark published, long limit, Publisher publisher) {
+
+        Instrument instrument = buffer.instrument;
+
+        long last = published.time;
+
+        try {
+
+            long to = history.getTimeOfLastTick(instrument);
+
+            long from = Math.max(last, to - limit); // Inclusive of the last millisecond.
+
+            if (from <= to) {
+
+                List<ITick> ticks = history.getTicks(instrument, from, to);
+
+                for (ITick tick : Objects.requireNonNullElse(ticks, List.<ITick>of())) {
+
+                    if (!published.record(tick.getTime(), tick.getAsk(), tick.getBid())) {
+                        continue;
+                    }
+
+                    publisher.publish(instrument, tick, true);
+
+                }
+
+            }
+
+            logger.info("Backfilled : {} ({} - {})", instrument, last, published.time);
+
+        } catch (Exception e) {
+
+            logger.warn("Backfill failure : {} ({})", instrument, last, e);
+
+        } finally {
+
+            buffer.release(published, publisher);
+
+            buffers.remove(instrument, buffer);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    static class Buffer {
+
+        private final Instrument instrument;
+
+        private final List<ITick> ticks = new ArrayList<>();
+
+        private boolean active = true;
+
+        Buffer(Instrument instrument) {
+            this.instrument = instrument;
+        }
+
+        synchronized boolean offer(ITick tick) {
+
+            if (active) {
+                ticks.add(tick);
+            }
+
+            return active;
+
+        }
+
+        synchronized void release(Mark published, Publisher publisher) {
+
+            for (ITick tick : ticks) {
+                if (published.record(tick.getTime(), tick.getAsk(), tick.getBid())) {
+                    publisher.publish(instrument, tick, false);
+                }
+            }
+
+            ticks.clear();
+
+            active = false;
+
+        }
+
+    }
+
+    /**
+     * Time of the last published tick, and the prices of the ticks published within the same millisecond, so that the
+     * multiple ticks within the millisecond are distinguished from the duplicates.
+     */
+    @VisibleForTesting
+    static class Mark {
+
+        private final double[] asks = new double[SAME_TIME_CAPACITY];
+
+        private final double[] bids = new double[SAME_TIME_CAPACITY];
+
+        private long time;
+
+        private int count;
+
+        /**
+         * @return {@code true} if recorded, or {@code false} if older or already recorded.
+         */
+        synchronized boolean record(long tickTime, double ask, double bid) {
+
+            if (tickTime < time) {
+                return false;
+            }
+
+            if (tickTime > time) {
+
+                time = tickTime;
+
+                count = 0;
+
+            } else {
+
+                for (int i = 0; i < count; i++) {
+                    if (asks[i] == ask && bids[i] == bid) {
+                        return false;
+                    }
+                }
+
+            }
+
+            if (count < SAME_TIME_CAPACITY) {
+                asks[count] = ask;
+                bids[count] = bid;
+                count++;
+            }
+
+            return true;
+
+        }
+
+        synchronized Mark copy() {
+
+            Mark copy = new Mark();
+
+            System.arraycopy(asks, 0, copy.asks, 0, count);
+
+            System.arraycopy(bids, 0, copy.bids, 0, count);
+
+            copy.time = time;
+
+            copy.count = count;
+
+            return copy;
+
+        }
+
+    }
+
+}
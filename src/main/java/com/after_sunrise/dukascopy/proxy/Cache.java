@@ -0,0 +1,641 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IHistory;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.after_sunrise.dukascopy.proxy.Codec.readDeltas;
+import static com.after_sunrise.dukascopy.proxy.Codec.readDoubles;
+import static com.after_sunrise.dukascopy.proxy.Codec.writeDeltas;
+import static com.after_sunrise.dukascopy.proxy.Codec.writeDoubles;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CACHE_CHUNKS;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CACHE_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CACHE_SETTLE;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CACHE_SIZE;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_HISTORY_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CACHE_CHUNKS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CACHE_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CACHE_SETTLE;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CACHE_SIZE;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_HISTORY_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_HISTORY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Caches the range queries of the {@link IHistory}, split into the time-aligned chunks per instrument, period and side
+ * (hourly for ticks, and a fixed number of bars for bars), so that the repeated and overlapping ranges are served
+ * without querying the platform again.
+ * <ul>
+ * <li>Chunks are stored as compressed columns, and the least recently used ones are evicted beyond the size limit.
+ * Evicted chunks are written to the disk, if configured, and are read back instead of being queried.</li>
+ * <li>Concurrent requests of the same chunk share a single query upstream.</li>
+ * <li>Only the chunks ended before the latest tick by the settling period are cached, since the historical data is
+ * immutable once settled. The chunk of the current time is queried for each request, up to the latest tick or the
+ * last completed bar, since the platform rejects the queries beyond them.</li>
+ * <li>Queries are executed on the {@link History} pool shared with the {@link Subscriber}.</li>
+ * </ul>
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@RestController
+public class Cache implements Listener {
+
+    static final long TICK_CHUNK = HOURS.toMillis(1);
+
+    static final int BAR_CHUNK = 1024;
+
+    static final String SUFFIX = ".chk";
+
+    private static final long DAY = DAYS.toMillis(1);
+
+    /**
+     * Approximate bytes of the key and the entry, in addition to the compressed columns.
+     */
+    private static final int OVERHEAD = 128;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Configuration configuration;
+
+    private final AtomicReference<IContext> context = new AtomicReference<>();
+
+    private final ConcurrentMap<String, CompletableFuture<Chunk>> fetches = new ConcurrentHashMap<>();
+
+    private final Map<String, Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true); // Access order.
+
+    private final long capacity;
+
+    private final Path root;
+
+    private final History executor;
+
+    private long size;
+
+    @Autowired
+    public Cache(Configuration configuration, History history) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.executor = Objects.requireNonNull(history, "History is required.");
+
+        this.capacity = configuration.getLong(CK_CACHE_SIZE, CV_CACHE_SIZE);
+
+        String path = configuration.getString(CK_CACHE_PATH, CV_CACHE_PATH);
+
+        this.root = StringUtils.isBlank(path) ? null : Paths.get(path).toAbsolutePath();
+
+    }
+
+    @Override
+    public void onStart(int index, IContext context) {
+        if (index == 0) {
+            this.context.set(context);
+        }
+    }
+
+    @Override
+    public void onStop(int index) {
+        if (index == 0) {
+            this.context.set(null);
+        }
+    }
+
+    /**
+     * Retrieves the ticks within the time range {@code [from, to)}.
+     */
+    @GetMapping(path = ENDPOINT_HISTORY + "/tick/{instrument}")
+    public CompletableFuture<ResponseEntity<List<Map<String, Object>>>> getTicks(
+            @PathVariable Instrument instrument, @RequestParam("from") long from, @RequestParam("to") long to) {
+        return request(instrument, null, null, from, to);
+    }
+
+    /**
+     * Retrieves the bars of the side, started within the time range {@code [from, to)}.
+     */
+    @GetMapping(path = ENDPOINT_HISTORY + "/bar/{instrument}/{period}/{side}")
+    public CompletableFuture<ResponseEntity<List<Map<String, Object>>>> getBars(
+            @PathVariable Instrument instrument, @PathVariable Period period, @PathVariable OfferSide side,
+            @RequestParam("from") long from, @RequestParam("to") long to) {
+
+        if (period == null || side == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        return request(instrument, period, side, from, to);
+
+    }
+
+    /**
+     * @return Length of the chunk, or zero if the bars of the period are not aligned to the days.
+     */
+    @VisibleForTesting
+    static long getLength(Period period) {
+
+        if (period == null) {
+            return TICK_CHUNK;
+        }
+
+        long interval = period == Period.TICK ? 0 : period.getInterval();
+
+        return interval > 0 && DAY % interval == 0 ? interval * BAR_CHUNK : 0;
+
+    }
+
+    @VisibleForTesting
+    static String getKey(Instrument instrument, Period period, OfferSide side, long start) {
+
+        String name = period == null ? "TICK" : period.name() + "/" + side.name();
+
+        return instrument.name() + "/" + name + "/" + start;
+
+    }
+
+    /**
+     * Looks up the chunks covering the range, replying "400 Bad Request" if the range is invalid or too long,
+     * "503 Service Unavailable" if the executor is saturated, and "504 Gateway Timeout" if not completed within the
+     * {@link Config#CK_HISTORY_TIMEOUT}.
+     */
+    @VisibleForTesting
+    CompletableFuture<ResponseEntity<List<Map<String, Object>>>> request(
+            Instrument instrument, Period period, OfferSide side, long from, long to) {
+
+        long length = getLength(period);
+
+        int limit = configuration.getInt(CK_CACHE_CHUNKS, CV_CACHE_CHUNKS);
+
+        if (instrument == null || length <= 0 || from >= to
+                || Math.floorDiv(to - 1, length) - Math.floorDiv(from, length) >= limit) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        List<CompletableFuture<Chunk>> futures = new ArrayList<>();
+
+        for (long start = Math.floorDiv(from, length) * length; start < to; start += length) {
+
+            CompletableFuture<Chunk> future = lookup(instrument, period, side, start, length);
+
+            if (future.isCompletedExceptionally()) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+            }
+
+            futures.add(future);
+
+        }
+
+        long millis = configuration.getLong(CK_HISTORY_TIMEOUT, CV_HISTORY_TIMEOUT.toMillis());
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+
+            List<Map<String, Object>> values = new ArrayList<>();
+
+            for (CompletableFuture<Chunk> future : futures) {
+                convert(instrument, side, future.join(), from, to, values);
+            }
+
+            return ResponseEntity.ok(values);
+
+        }).completeOnTimeout(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build(), millis, MILLISECONDS);
+
+    }
+
+    /**
+     * Retrieves the chunk from the memory, or from the disk or the platform asynchronously, sharing the single query
+     * among the concurrent requests of the same chunk.
+     */
+    @VisibleForTesting
+    CompletableFuture<Chunk> lookup(Instrument instrument, Period period, OfferSide side, long start, long length) {
+
+        String key = getKey(instrument, period, side, start);
+
+        Chunk cached = get(key);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<Chunk> future = new CompletableFuture<>();
+
+        CompletableFuture<Chunk> existing = fetches.putIfAbsent(key, future);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+
+            executor.execute(() -> {
+
+                try {
+                    future.complete(load(key, instrument, period, side, start, length));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    fetches.remove(key, future);
+                }
+
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            fetches.remove(key, future);
+
+            future.completeExceptionally(e);
+
+        }
+
+        return future;
+
+    }
+
+    @VisibleForTesting
+    Chunk load(String key, Instrument instrument, Period period, OfferSide side, long start, long length)
+            throws Exception {
+
+        Chunk chunk = get(key); // Stored while being queued.
+
+        if (chunk != null) {
+            return chunk;
+        }
+
+        chunk = read(key);
+
+        if (chunk != null) {
+
+            put(key, chunk);
+
+            return chunk;
+
+        }
+
+        IContext c = context.get();
+
+        if (c == null) {
+            throw new IllegalStateException("History is not available.");
+        }
+
+        chunk = fetch(c.getHistory(), instrument, period, side, start, start + length);
+
+        logger.debug("Fetched chunk : {} (count={}, complete={})", key, chunk.count, chunk.complete);
+
+        if (chunk.complete) {
+            put(key, chunk);
+        }
+
+        return chunk;
+
+    }
+
+    @VisibleForTesting
+    Chunk fetch(IHistory history, Instrument instrument, Period period, OfferSide side, long start, long end)
+            throws Exception {
+
+        long last = history.getTimeOfLastTick(instrument);
+
+        long settle = configuration.getLong(CK_CACHE_SETTLE, CV_CACHE_SETTLE.toMillis());
+
+        boolean complete = end + settle <= last;
+
+        if (start > last) {
+            return new Chunk(0, new Columns(0, 0, 0).encode(), false); // Not yet available.
+        }
+
+        long multiplier = BigDecimal.ONE.scaleByPowerOfTen(instrument.getTickScale()).longValueExact();
+
+        if (period == null) {
+
+            List<ITick> ticks = history.getTicks(instrument, start, Math.min(end - 1, last));
+
+            Columns columns = new Columns(ticks.size(), 2, 2);
+
+            for (int i = 0; i < columns.count; i++) {
+                ITick tick = ticks.get(i);
+                columns.times[i] = tick.getTime();
+                columns.prices[0][i] = Math.round(tick.getAsk() * multiplier);
+                columns.prices[1][i] = Math.round(tick.getBid() * multiplier);
+                columns.volumes[0][i] = tick.getAskVolume();
+                columns.volumes[1][i] = tick.getBidVolume();
+            }
+
+            return new Chunk(columns.count, columns.encode(), complete);
+
+        }
+
+        long to = end - period.getInterval();
+
+        if (!complete) {
+
+            IBar bar = history.getBar(instrument, period, side, 1); // Last completed.
+
+            to = Math.min(to, bar == null ? start - 1 : bar.getTime());
+
+        }
+
+        List<IBar> bars = to < start ? List.of() : history.getBars(instrument, period, side, start, to);
+
+        Columns columns = new Columns(bars.size(), 4, 1);
+
+        for (int i = 0; i < columns.count; i++) {
+            IBar bar = bars.get(i);
+            columns.times[i] = bar.getTime();
+            columns.prices[0][i] = Math.round(bar.getOpen() * multiplier);
+            columns.prices[1][i] = Math.round(bar.getHigh() * multiplier);
+            columns.prices[2][i] = Math.round(bar.getLow() * multiplier);
+            columns.prices[3][i] = Math.round(bar.getClose() * multiplier);
+            columns.volumes[0][i] = bar.getVolume();
+        }
+
+        return new Chunk(columns.count, columns.encode(), complete);
+
+    }
+
+    @VisibleForTesting
+    void convert(Instrument instrument, OfferSide side, Chunk chunk, long from, long to,
+                 List<Map<String, Object>> values) {
+
+        int scale = instrument.getTickScale();
+
+        Columns columns;
+
+        try {
+            columns = Columns.decode(chunk.bytes, chunk.count, side == null ? 2 : 4, side == null ? 2 : 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String prefix = side == OfferSide.BID ? "b" : "a";
+
+        for (int i = 0; i < columns.count; i++) {
+
+            if (columns.times[i] < from || columns.times[i] >= to) {
+                continue;
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("in", instrument.name());
+            map.put("is", scale);
+            map.put("tt", columns.times[i]);
+
+            if (side == null) {
+                map.put("ap", BigDecimal.valueOf(columns.prices[0][i], scale));
+                map.put("av", columns.volumes[0][i]);
+                map.put("bp", BigDecimal.valueOf(columns.prices[1][i], scale));
+                map.put("bv", columns.volumes[1][i]);
+            } else {
+                map.put(prefix + "o", BigDecimal.valueOf(columns.prices[0][i], scale));
+                map.put(prefix + "h", BigDecimal.valueOf(columns.prices[1][i], scale));
+                map.put(prefix + "l", BigDecimal.valueOf(columns.prices[2][i], scale));
+                map.put(prefix + "c", BigDecimal.valueOf(columns.prices[3][i], scale));
+                map.put(prefix + "v", columns.volumes[0][i]);
+            }
+
+            values.add(map);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    Chunk get(String key) {
+        synchronized (chunks) {
+            return chunks.get(key);
+        }
+    }
+
+    /**
+     * Stores the chunk, and evicts the least recently used ones beyond the size, spilling them to the disk.
+     */
+    @VisibleForTesting
+    void put(String key, Chunk chunk) {
+
+        Map<String, Chunk> evicted = new LinkedHashMap<>();
+
+        synchronized (chunks) {
+
+            Chunk previous = chunks.put(key, chunk);
+
+            size += chunk.bytes.length + OVERHEAD - (previous == null ? 0 : previous.bytes.length + OVERHEAD);
+
+            Iterator<Map.Entry<String, Chunk>> i = chunks.entrySet().iterator();
+
+            while (size > capacity && i.hasNext()) {
+
+                Map.Entry<String, Chunk> entry = i.next();
+
+                evicted.put(entry.getKey(), entry.getValue());
+
+                size -= entry.getValue().bytes.length + OVERHEAD;
+
+                i.remove();
+
+            }
+
+        }
+
+        evicted.forEach(this::write);
+
+    }
+
+    @VisibleForTesting
+    Chunk read(String key) throws IOException {
+
+        if (root == null) {
+            return null;
+        }
+
+        Path path = root.resolve(key + SUFFIX);
+
+        if (!Files.isReadable(path)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+
+            int count = in.readInt();
+
+            byte[] bytes = new byte[in.readInt()];
+
+            in.readFully(bytes);
+
+            return new Chunk(count, bytes, true);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void write(String key, Chunk chunk) {
+
+        if (root == null) {
+            return;
+        }
+
+        Path path = root.resolve(key + SUFFIX);
+
+        if (Files.exists(path)) {
+            return; // Immutable.
+        }
+
+        try {
+
+            Files.createDirectories(path.getParent());
+
+            Path temp = Files.createTempFile(path.getParent(), null, null);
+
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(chunk.count);
+                out.writeInt(chunk.bytes.length);
+                out.write(chunk.bytes);
+            }
+
+            Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+
+        } catch (IOException e) {
+
+            logger.warn("Failed to spill chunk : {}", path, e);
+
+        }
+
+    }
+
+    /**
+     * Compressed columns of a chunk, immutable once stored.
+     */
+    @VisibleForTesting
+    static class Chunk {
+
+        private final int count;
+
+        private final byte[] bytes;
+
+        private final boolean complete;
+
+        Chunk(int count, byte[] bytes, boolean complete) {
+            this.count = count;
+            this.bytes = bytes;
+            this.complete = complete;
+        }
+
+    }
+
+    /**
+     * Times, prices in the number of ticks (ask and bid, or open, high, low and close), and volumes.
+     */
+    @VisibleForTesting
+    static class Columns {
+
+        private final int count;
+
+        private final long[] times;
+
+        private final long[][] prices;
+
+        private final double[][] volumes;
+
+        Columns(int count, int prices, int volumes) {
+            this(count, new long[count], new long[prices][count], new double[volumes][count]);
+        }
+
+        Columns(int count, long[] times, long[][] prices, double[][] volumes) {
+            this.count = count;
+            this.times = times;
+            this.prices = prices;
+            this.volumes = volumes;
+        }
+
+        /**
+         * @return Compressed columns : times and prices as zigzag variable-length deltas, then the volumes.
+         */
+        byte[] encode() throws IOException {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * Long.BYTES);
+
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+
+                writeDeltas(out, times, count);
+
+                for (long[] values : prices) {
+                    writeDeltas(out, values, count);
+                }
+
+                for (double[] values : volumes) {
+                    writeDoubles(out, values, count);
+                }
+
+            }
+
+            return bytes.toByteArray();
+
+        }
+
+        static Columns decode(byte[] bytes, int count, int prices, int volumes) throws IOException {
+
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+
+                long[] times = readDeltas(in, count);
+
+                long[][] priceColumns = new long[prices][];
+
+                for (int i = 0; i < prices; i++) {
+                    priceColumns[i] = readDeltas(in, count);
+                }
+
+                double[][] volumeColumns = new double[volumes][];
+
+                for (int i = 0; i < volumes; i++) {
+                    volumeColumns[i] = readDoubles(in, count);
+                }
+
+                return new Columns(count, times, priceColumns, volumeColumns);
+
+            }
+
+        }
+
+    }
+
+}
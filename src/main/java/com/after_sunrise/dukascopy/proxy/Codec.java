@@ -0,0 +1,100 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Columnar encoding of the ticks and bars, shared by the {@link Archive} blocks and the {@link Cache} chunks.
+ * Integral columns (times, and prices in the number of ticks) are written as the zigzag variable-length deltas
+ * from the previous value, and the volumes as the raw doubles. Deltas overflowing a long wrap around both ways.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+final class Codec {
+
+    private Codec() {
+    }
+
+    static void writeDeltas(DataOutputStream out, long[] values, int count) throws IOException {
+
+        long previous = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            long delta = values[i] - previous;
+
+            long zigzag = (delta << 1) ^ (delta >> 63);
+
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+
+            out.write((int) zigzag);
+
+            previous = values[i];
+
+        }
+
+    }
+
+    static long[] readDeltas(DataInputStream in, int count) throws IOException {
+
+        long[] values = new long[count];
+
+        long previous = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            long zigzag = 0;
+
+            for (int shift = 0; ; shift += 7) {
+
+                int b = in.read();
+
+                if (b < 0) {
+                    throw new EOFException();
+                }
+
+                zigzag |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+
+            }
+
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+
+            values[i] = previous;
+
+        }
+
+        return values;
+
+    }
+
+    static void writeDoubles(DataOutputStream out, double[] values, int count) throws IOException {
+
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(values[i]);
+        }
+
+    }
+
+    static double[] readDoubles(DataInputStream in, int count) throws IOException {
+
+        double[] values = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readDouble();
+        }
+
+        return values;
+
+    }
+
+}
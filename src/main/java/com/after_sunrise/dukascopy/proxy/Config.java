@@ -1,6 +1,7 @@
 package com.after_sunrise.dukascopy.proxy;
 
 import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
 import com.dukascopy.api.system.ClientFactory;
 import com.dukascopy.api.system.IClient;
 import com.google.common.annotations.VisibleForTesting;
@@ -10,31 +11,40 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.MetricsServlet;
 import io.prometheus.client.hotspot.DefaultExports;
 import org.apache.commons.configuration2.BaseConfiguration;
 import org.apache.commons.configuration2.CompositeConfiguration;
+import org.apache.commons.configuration2.ImmutableConfiguration;
 import org.apache.commons.configuration2.MapConfiguration;
 import org.apache.commons.configuration2.SystemConfiguration;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.server.ConfigurableWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -46,10 +56,21 @@ import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * @author takanori.takase
@@ -75,6 +96,27 @@ public class Config {
     public static final String CK_SERVER_STOMP = CONF_PREFIX + "server.metrics";
     public static final String CV_SERVER_STOMP = "/stomp";
 
+    public static final String CK_SERVER_DEFLATE_ENABLED = CONF_PREFIX + "server.deflate.enabled";
+    public static final boolean CV_SERVER_DEFLATE_ENABLED = true;
+
+    public static final String CK_SERVER_DEFLATE_TAKEOVER = CONF_PREFIX + "server.deflate.takeover";
+    public static final boolean CV_SERVER_DEFLATE_TAKEOVER = true;
+
+    public static final String CK_SERVER_DEFLATE_SAMPLE = CONF_PREFIX + "server.deflate.sample";
+    public static final int CV_SERVER_DEFLATE_SAMPLE = 16;
+
+    public static final String CK_SERVER_RELAY_HOST = CONF_PREFIX + "server.relay.host";
+    public static final String CV_SERVER_RELAY_HOST = "";
+
+    public static final String CK_SERVER_RELAY_PORT = CONF_PREFIX + "server.relay.port";
+    public static final int CV_SERVER_RELAY_PORT = 61613;
+
+    public static final String CK_SERVER_RELAY_USER = CONF_PREFIX + "server.relay.user";
+    public static final String CV_SERVER_RELAY_USER = "guest";
+
+    public static final String CK_SERVER_RELAY_PASS = CONF_PREFIX + "server.relay.pass";
+    public static final String CV_SERVER_RELAY_PASS = "guest";
+
     public static final String CK_CREDENTIAL_JNLP = CONF_PREFIX + "credential.jnlp";
     public static final String CV_CREDENTIAL_JNLP = "http://platform.dukascopy.com/demo/jforex.jnlp";
 
@@ -84,6 +126,12 @@ public class Config {
     public static final String CK_CREDENTIAL_PASS = CONF_PREFIX + "credential.pass";
     public static final String CV_CREDENTIAL_PASS = "bar";
 
+    /**
+     * Disabled for the front-end nodes, which only serve the client sessions from the external broker relay.
+     */
+    public static final String CK_CONNECTION_ENABLED = CONF_PREFIX + "connection.enabled";
+    public static final boolean CV_CONNECTION_ENABLED = true;
+
     public static final String CK_CONNECTION_WAIT = CONF_PREFIX + "connection.wait";
     public static final Duration CV_CONNECTION_WAIT = Duration.ofSeconds(5);
 
@@ -93,19 +141,158 @@ public class Config {
     public static final String CK_SUBSCRIPTION_INSTRUMENT = CONF_PREFIX + "subscription.instrument";
     public static final String CV_SUBSCRIPTION_INSTRUMENT = "";
 
+    public static final String CK_SUBSCRIPTION_WINDOW = CONF_PREFIX + "subscription.window";
+    public static final Duration CV_SUBSCRIPTION_WINDOW = Duration.ofMillis(100);
+
+    public static final String CK_SNAPSHOT_PATH = CONF_PREFIX + "snapshot.path";
+    public static final String CV_SNAPSHOT_PATH = "";
+
+    public static final String CK_SNAPSHOT_INTERVAL = CONF_PREFIX + "snapshot.interval";
+    public static final Duration CV_SNAPSHOT_INTERVAL = Duration.ofSeconds(10);
+
+    public static final String CK_BACKFILL_LIMIT = CONF_PREFIX + "backfill.limit";
+    public static final Duration CV_BACKFILL_LIMIT = Duration.ofMinutes(10);
+
+    public static final String CK_BACKFILL_THREADS = CONF_PREFIX + "backfill.threads";
+    public static final int CV_BACKFILL_THREADS = 4;
+
+    public static final String CK_SHARD_COUNT = CONF_PREFIX + "shard.count";
+    public static final int CV_SHARD_COUNT = 1;
+
+    /**
+     * Runs an additional standby connection subscribing to all instruments, of which the connection index is next to
+     * the last shard. (cf: "dukas-proxy.shard.1.credential.user" if there are no additional shards)
+     */
+    public static final String CK_STANDBY_ENABLED = CONF_PREFIX + "standby.enabled";
+    public static final boolean CV_STANDBY_ENABLED = false;
+
+    public static final String CK_STANDBY_THRESHOLD = CONF_PREFIX + "standby.threshold";
+    public static final Duration CV_STANDBY_THRESHOLD = Duration.ofSeconds(1);
+
+    public static final String CK_ANALYTICS_INTERVAL = CONF_PREFIX + "analytics.interval";
+    public static final Duration CV_ANALYTICS_INTERVAL = Duration.ofSeconds(1);
+
+    public static final String CK_ANALYTICS_DECAY = CONF_PREFIX + "analytics.decay";
+    public static final double CV_ANALYTICS_DECAY = 0.94;
+
+    public static final String CK_ANALYTICS_WINDOW = CONF_PREFIX + "analytics.window";
+    public static final Duration CV_ANALYTICS_WINDOW = Duration.ofMinutes(1);
+
+    public static final String CK_ANALYTICS_BUCKETS = CONF_PREFIX + "analytics.buckets";
+    public static final int CV_ANALYTICS_BUCKETS = 60;
+
+    public static final String CK_SYNTHETIC = CONF_PREFIX + "synthetic";
+
+    public static final String CK_DEPTH_LEVELS = CONF_PREFIX + "depth.levels";
+    public static final int CV_DEPTH_LEVELS = 10;
+
+    public static final String CK_HISTORY_THREADS = CONF_PREFIX + "history.threads";
+    public static final int CV_HISTORY_THREADS = 4;
+
+    public static final String CK_HISTORY_QUEUE = CONF_PREFIX + "history.queue";
+    public static final int CV_HISTORY_QUEUE = 64;
+
+    public static final String CK_HISTORY_TIMEOUT = CONF_PREFIX + "history.timeout";
+    public static final Duration CV_HISTORY_TIMEOUT = Duration.ofSeconds(30);
+
+    public static final String CK_POLL_WAIT = CONF_PREFIX + "poll.wait";
+    public static final Duration CV_POLL_WAIT = Duration.ofMinutes(1);
+
+    public static final String CK_MESSAGE_SKIP = CONF_PREFIX + "message.skip";
+    public static final String CV_MESSAGE_SKIP = "";
+
+    public static final String CK_ORDER_ENABLED = CONF_PREFIX + "order.enabled";
+    public static final boolean CV_ORDER_ENABLED = false;
+
+    public static final String CK_ORDER_TIMEOUT = CONF_PREFIX + "order.timeout";
+    public static final Duration CV_ORDER_TIMEOUT = Duration.ofSeconds(10);
+
+    public static final String CK_RING_PATH = CONF_PREFIX + "ring.path";
+    public static final String CV_RING_PATH = "";
+
+    public static final String CK_RING_CAPACITY = CONF_PREFIX + "ring.capacity";
+    public static final int CV_RING_CAPACITY = 65536;
+
+    public static final String CK_ARCHIVE_PATH = CONF_PREFIX + "archive.path";
+    public static final String CV_ARCHIVE_PATH = "";
+
+    public static final String CK_ARCHIVE_BLOCK = CONF_PREFIX + "archive.block";
+    public static final int CV_ARCHIVE_BLOCK = 4096;
+
+    public static final String CK_ARCHIVE_INTERVAL = CONF_PREFIX + "archive.interval";
+    public static final Duration CV_ARCHIVE_INTERVAL = Duration.ofMinutes(1);
+
+    public static final String CK_ARCHIVE_SPAN = CONF_PREFIX + "archive.span";
+    public static final Duration CV_ARCHIVE_SPAN = Duration.ofDays(1);
+
+    public static final String CK_CACHE_SIZE = CONF_PREFIX + "cache.size";
+    public static final long CV_CACHE_SIZE = 64L * 1024 * 1024;
+
+    public static final String CK_CACHE_PATH = CONF_PREFIX + "cache.path";
+    public static final String CV_CACHE_PATH = "";
+
+    public static final String CK_CACHE_CHUNKS = CONF_PREFIX + "cache.chunks";
+    public static final int CV_CACHE_CHUNKS = 24;
+
+    public static final String CK_CACHE_SETTLE = CONF_PREFIX + "cache.settle";
+    public static final Duration CV_CACHE_SETTLE = Duration.ofMinutes(1);
+
+    public static final String CK_MARKET_INTERVAL = CONF_PREFIX + "market.interval";
+    public static final Duration CV_MARKET_INTERVAL = Duration.ZERO;
+
+    public static final String CK_RECENT_COUNT = CONF_PREFIX + "recent.count";
+    public static final int CV_RECENT_COUNT = 0;
+
+    public static final String CK_RECENT_WINDOW = CONF_PREFIX + "recent.window";
+    public static final Duration CV_RECENT_WINDOW = Duration.ofMinutes(5);
+
+    public static final String CK_GRPC_PORT = CONF_PREFIX + "grpc.port";
+    public static final int CV_GRPC_PORT = 0;
+
+    public static final String CK_STARTUP_LAZY = CONF_PREFIX + "startup.lazy";
+    public static final boolean CV_STARTUP_LAZY = false;
+
+    public static final String CK_STARTUP_EXIT = CONF_PREFIX + "startup.exit";
+    public static final boolean CV_STARTUP_EXIT = false;
+
     public static final String TOPIC = "/topic";
     public static final String TOPIC_SUBSCRIPTION = TOPIC + "/subscription";
     public static final String TOPIC_MESSAGE = TOPIC + "/message";
     public static final String TOPIC_ACCOUNT = TOPIC + "/account";
     public static final String TOPIC_TICK = TOPIC + "/tick";
     public static final String TOPIC_BAR = TOPIC + "/bar";
+    public static final String TOPIC_ANALYTICS = TOPIC + "/analytics";
+    public static final String TOPIC_MARKET = TOPIC + "/market";
+    public static final String TOPIC_DEPTH = TOPIC + "/depth";
+    public static final String TOPIC_ORDER = TOPIC + "/order";
+    public static final String TOPIC_RECENT = TOPIC + "/recent";
+
+    /**
+     * In-process headers of the instrument ordinal (or the synthetic name and tick scale) and the prices, not sent to
+     * the clients nor to the external broker.
+     */
+    public static final String HEADER_INSTRUMENT = "dukas-proxy.instrument";
+    public static final String HEADER_SYNTHETIC = "dukas-proxy.synthetic";
+    public static final String HEADER_SCALE = "dukas-proxy.scale";
+    public static final String HEADER_ASK = "dukas-proxy.ask";
+    public static final String HEADER_BID = "dukas-proxy.bid";
 
     public static final String ENDPOINT_SUBSCRIPTION = "/subscription";
     public static final String ENDPOINT_SUBSCRIPTION_CREATE = ENDPOINT_SUBSCRIPTION + "/create";
     public static final String ENDPOINT_SUBSCRIPTION_DELETE = ENDPOINT_SUBSCRIPTION + "/delete";
+    public static final String ENDPOINT_ORDER = "/order";
+    public static final String ENDPOINT_ORDER_SUBMIT = ENDPOINT_ORDER + "/submit";
+    public static final String ENDPOINT_ORDER_MODIFY = ENDPOINT_ORDER + "/modify";
+    public static final String ENDPOINT_ORDER_CANCEL = ENDPOINT_ORDER + "/cancel";
+    public static final String ENDPOINT_ARCHIVE = "/archive";
+    public static final String ENDPOINT_RECENT = "/recent";
+    public static final String ENDPOINT_HISTORY = "/history";
+    public static final String ENDPOINT_RECENT_REPLAY = ENDPOINT_RECENT + "/replay";
 
     static final Gson GSON;
 
+    private static final Map<Period, Integer> PERIOD_INDICES;
+
     static {
 
         GsonBuilder builder = new GsonBuilder()
@@ -113,6 +300,8 @@ public class Config {
                         Float.class, (JsonSerializer<Float>) (s, t, c) -> new JsonPrimitive(s.toString()))
                 .registerTypeAdapter(
                         Double.class, (JsonSerializer<Double>) (s, t, c) -> new JsonPrimitive(s.toString()))
+                .registerTypeAdapter(
+                        double[].class, new DoubleArrayAdapter())
                 .registerTypeAdapter(
                         BigDecimal.class, (JsonSerializer<BigDecimal>) (s, t, c) -> new JsonPrimitive(s.toPlainString()))
                 .registerTypeAdapter(
@@ -129,6 +318,127 @@ public class Config {
 
         GSON = builder.create();
 
+        Map<Period, Integer> indices = new HashMap<>();
+
+        Period[] periods = Period.values();
+
+        for (int i = 0; i < periods.length; i++) {
+            indices.putIfAbsent(periods[i], i);
+        }
+
+        PERIOD_INDICES = Collections.unmodifiableMap(indices);
+
+    }
+
+    /**
+     * Writes the primitive arrays (cf: the depth levels) as the strings, same as the boxed values, without boxing them.
+     */
+    @VisibleForTesting
+    static class DoubleArrayAdapter extends TypeAdapter<double[]> {
+
+        @Override
+        public void write(JsonWriter out, double[] values) throws IOException {
+
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+
+            for (double value : values) {
+                out.value(Double.toString(value));
+            }
+
+            out.endArray();
+
+        }
+
+        @Override
+        public double[] read(JsonReader in) throws IOException {
+
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            double[] values = new double[8];
+
+            int count = 0;
+
+            in.beginArray();
+
+            while (in.hasNext()) {
+
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+
+                values[count++] = in.nextDouble(); // Either the string or the number.
+
+            }
+
+            in.endArray();
+
+            return Arrays.copyOf(values, count);
+
+        }
+
+    }
+
+    /**
+     * Configuration key overriding the given key for the specific connection.
+     * (cf: "dukas-proxy.credential.user" to "dukas-proxy.shard.1.credential.user")
+     */
+    public static String getShardKey(int index, String key) {
+        return CONF_PREFIX + "shard." + index + "." + key.substring(CONF_PREFIX.length());
+    }
+
+    /**
+     * Index of the predefined period within {@link Period#values()}, or -1 for the custom periods, which is shared
+     * with the processes of the same SDK version (cf: {@link RingReader}) unlike the periods created on demand.
+     */
+    static int getPeriodIndex(Period period) {
+        return period == null ? -1 : PERIOD_INDICES.getOrDefault(period, -1);
+    }
+
+    /**
+     * Creates the daemon threads named after the owner, suffixed with the sequence if {@code numbered}.
+     */
+    static ThreadFactory newThreadFactory(Class<?> owner, boolean numbered) {
+
+        AtomicInteger count = new AtomicInteger();
+
+        return r -> {
+            String name = owner.getSimpleName();
+            Thread thread = new Thread(r, numbered ? name + "-" + count.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        };
+
+    }
+
+    static ScheduledExecutorService newScheduledExecutor(Class<?> owner) {
+        return Executors.newSingleThreadScheduledExecutor(newThreadFactory(owner, false));
+    }
+
+    /**
+     * Shuts down the executor, either letting the submitted tasks run or interrupting them,
+     * and waits for the termination up to the {@link #CK_LIFECYCLE_WAIT}.
+     */
+    static void shutdown(ImmutableConfiguration configuration, ExecutorService executor, boolean interrupt)
+            throws InterruptedException {
+
+        long millis = configuration.getLong(CK_LIFECYCLE_WAIT, CV_LIFECYCLE_WAIT.toMillis());
+
+        if (interrupt) {
+            executor.shutdownNow();
+        } else {
+            executor.shutdown();
+        }
+
+        executor.awaitTermination(millis, MILLISECONDS);
+
     }
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -212,6 +522,13 @@ public class Config {
 
     @Bean
     public IClient client() throws ReflectiveOperationException {
+        return loadClient();
+    }
+
+    /**
+     * Loads the client singleton, which is also invoked in parallel with the context startup to preload the SDK.
+     */
+    static synchronized IClient loadClient() throws ReflectiveOperationException {
         return ClientFactory.getDefaultInstance();
     }
 
@@ -224,18 +541,43 @@ public class Config {
 
     }
 
+    @Bean
+    public FilterRegistrationBean<Deflate> filterRegistrationBean(Deflate deflate) {
+
+        String path = configuration.getString(CK_SERVER_STOMP, CV_SERVER_STOMP);
+
+        FilterRegistrationBean<Deflate> bean = new FilterRegistrationBean<>(deflate);
+
+        bean.addUrlPatterns(path, path + "/*");
+
+        return bean;
+
+    }
+
     @Configuration
     @EnableWebSocketMessageBroker
     public static class WsConfig implements WebSocketMessageBrokerConfigurer, WebServerFactoryCustomizer<ConfigurableWebServerFactory> {
 
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+
         private final org.apache.commons.configuration2.Configuration configuration;
 
         private final Gson gson;
 
+        private final Selector selector;
+
+        private final Throttle throttle;
+
+        private final Deflate deflate;
+
         @Autowired
-        public WsConfig(org.apache.commons.configuration2.Configuration configuration, Gson gson) {
+        public WsConfig(org.apache.commons.configuration2.Configuration configuration, Gson gson,
+                        Selector selector, Throttle throttle, Deflate deflate) {
             this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
             this.gson = Objects.requireNonNull(gson, "Gson is required.");
+            this.selector = Objects.requireNonNull(selector, "Selector is required.");
+            this.throttle = Objects.requireNonNull(throttle, "Throttle is required.");
+            this.deflate = Objects.requireNonNull(deflate, "Deflate is required.");
         }
 
         @Override
@@ -245,7 +587,28 @@ public class Config {
 
         @Override
         public void configureMessageBroker(MessageBrokerRegistry config) {
-            config.enableSimpleBroker(TOPIC);
+
+            String host = configuration.getString(CK_SERVER_RELAY_HOST, CV_SERVER_RELAY_HOST);
+
+            if (StringUtils.isBlank(host)) {
+
+                config.enableSimpleBroker(TOPIC);
+
+                return;
+
+            }
+
+            int port = configuration.getInt(CK_SERVER_RELAY_PORT, CV_SERVER_RELAY_PORT);
+            String user = configuration.getString(CK_SERVER_RELAY_USER, CV_SERVER_RELAY_USER);
+            String pass = configuration.getString(CK_SERVER_RELAY_PASS, CV_SERVER_RELAY_PASS);
+
+            logger.info("Relaying to external broker : {}:{} (user={})", host, port, user);
+
+            config.enableStompBrokerRelay(TOPIC)
+                    .setRelayHost(host).setRelayPort(port)
+                    .setClientLogin(user).setClientPasscode(pass)
+                    .setSystemLogin(user).setSystemPasscode(pass);
+
         }
 
         @Override
@@ -253,6 +616,21 @@ public class Config {
             registry.addEndpoint(configuration.getString(CK_SERVER_STOMP, CV_SERVER_STOMP)).withSockJS();
         }
 
+        @Override
+        public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+            registration.addDecoratorFactory(deflate);
+        }
+
+        @Override
+        public void configureClientInboundChannel(ChannelRegistration registration) {
+            registration.interceptors(selector, throttle); // Subscriptions
+        }
+
+        @Override
+        public void configureClientOutboundChannel(ChannelRegistration registration) {
+            registration.interceptors(selector, throttle); // Messages, filtered before being limited
+        }
+
         @Override
         public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
 
@@ -0,0 +1,198 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IStrategy;
+import com.dukascopy.api.system.IClient;
+import com.dukascopy.api.system.ISystemListener;
+import org.apache.commons.configuration2.ImmutableConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CONNECTION_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_JNLP;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_PASS;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_USER;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CONNECTION_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_JNLP;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_PASS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_USER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Manages a single {@link IClient} connection, running the strategy while connected and reconnecting on failures.
+ * The credentials can be overridden per connection with {@link Config#getShardKey(int, String)}.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Connection implements ISystemListener, ThreadFactory, UncaughtExceptionHandler, Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ImmutableConfiguration configuration;
+
+    private final int index;
+
+    private final IClient client;
+
+    private final IStrategy strategy;
+
+    private final ThreadFactory delegate;
+
+    private final ScheduledExecutorService executor;
+
+    public Connection(ImmutableConfiguration configuration, int index, IClient client, IStrategy strategy) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.index = index;
+
+        this.client = Objects.requireNonNull(client, "IClient is required.");
+
+        this.strategy = Objects.requireNonNull(strategy, "IStrategy is required.");
+
+        this.delegate = Executors.defaultThreadFactory();
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(this);
+
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+
+        Thread thread = delegate.newThread(r);
+
+        thread.setDaemon(true);
+
+        thread.setName(getClass().getSimpleName() + "-" + index);
+
+        thread.setUncaughtExceptionHandler(this);
+
+        return thread;
+
+    }
+
+    @Override
+    public void uncaughtException(Thread t, Throwable e) {
+
+        logger.error("Uncaught exception : {}", t, e);
+
+    }
+
+    public IClient getClient() {
+        return client;
+    }
+
+    public void start() {
+
+        client.setSystemListener(this);
+
+        executor.execute(this);
+
+    }
+
+    /**
+     * @return {@code true} if terminated gracefully.
+     */
+    public boolean stop(long millis) throws InterruptedException {
+
+        executor.shutdownNow();
+
+        executor.awaitTermination(millis, MILLISECONDS);
+
+        client.disconnect();
+
+        return executor.isTerminated();
+
+    }
+
+    @Override
+    public synchronized void onConnect() {
+
+        logger.info("IClient connected. [{}]", index);
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        long id = client.startStrategy(strategy);
+
+        logger.info("Started strategy : [{}] {}", id, strategy);
+
+    }
+
+    @Override
+    public synchronized void onDisconnect() {
+
+        logger.info("IClient disconnected. [{}]", index);
+
+        client.getStartedStrategies().forEach((id, strategy) -> {
+
+            client.stopStrategy(id);
+
+            logger.info("Stopped strategy : [{}] {}", id, strategy);
+
+        });
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        executor.execute(this); // Attempt reconnect.
+
+    }
+
+    @Override
+    public void run() {
+
+        String jnlp = getString(CK_CREDENTIAL_JNLP, CV_CREDENTIAL_JNLP);
+        String user = getString(CK_CREDENTIAL_USER, CV_CREDENTIAL_USER);
+        String pass = getString(CK_CREDENTIAL_PASS, CV_CREDENTIAL_PASS);
+
+        try {
+
+            String hash = DigestUtils.md5DigestAsHex(new ByteArrayInputStream(pass.getBytes(UTF_8)));
+
+            logger.info("IClient connecting... [{}] (url={}, user={}, pass=MD5:{})", index, jnlp, user, hash);
+
+            client.connect(jnlp, user, pass);
+
+        } catch (Exception e) {
+
+            if (executor.isShutdown()) {
+                return;
+            }
+
+            long millis = configuration.getLong(CK_CONNECTION_WAIT, CV_CONNECTION_WAIT.toMillis());
+
+            logger.warn("IClient connection failure. Reconnecting in {} ms... [{}]", millis, index, e);
+
+            executor.schedule(this, millis, MILLISECONDS);
+
+        }
+
+    }
+
+    private String getString(String key, String defaultValue) {
+        return configuration.getString(Config.getShardKey(index, key), configuration.getString(key, defaultValue));
+    }
+
+    @Override
+    public void onStart(long processId) {
+        logger.info("IClient process started : [{}] {}", index, processId);
+    }
+
+    @Override
+    public void onStop(long processId) {
+        logger.info("IClient process stopped : [{}] {}", index, processId);
+    }
+
+}
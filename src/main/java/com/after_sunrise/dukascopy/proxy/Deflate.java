@@ -0,0 +1,365 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_DEFLATE_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_DEFLATE_SAMPLE;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_DEFLATE_TAKEOVER;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SERVER_DEFLATE_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SERVER_DEFLATE_SAMPLE;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SERVER_DEFLATE_TAKEOVER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Controls the {@code permessage-deflate} negotiation of the WebSocket endpoint, and measures the compression.
+ * <ul>
+ * <li>Negotiation : The container negotiates from the extensions offered by the client, hence the offers of the
+ * handshake requests are rewritten, to be dropped if disabled, or to disable the context takeover of both sides.</li>
+ * <li>Measurement : The container does not expose the compressed sizes, hence every n-th message sent to each session
+ * is deflated at the default level, to estimate the compression ratio and the CPU time. Samples are deflated without
+ * the context, since the messages in between are not fed to the dictionary, hence the ratio is an upper bound of the
+ * sessions with the context takeover, which compress the repetitions across the messages further.</li>
+ * </ul>
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Deflate implements Filter, WebSocketHandlerDecoratorFactory {
+
+    static final String HEADER = "Sec-WebSocket-Extensions";
+
+    static final String EXTENSION = "permessage-deflate";
+
+    static final String SERVER_NO_TAKEOVER = "server_no_context_takeover";
+
+    static final String CLIENT_NO_TAKEOVER = "client_no_context_takeover";
+
+    /**
+     * Trailing bytes of the flushed block, removed from the compressed message (RFC 7692).
+     */
+    private static final int TRAILER = 4;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+
+    private final boolean takeover;
+
+    private final int sample;
+
+    private final Gauge sentBytes;
+
+    private final Gauge sentRatio;
+
+    private final Gauge sentCpu;
+
+    @Autowired
+    public Deflate(Configuration configuration, CollectorRegistry registry) {
+
+        Objects.requireNonNull(configuration, "Configuration is required.");
+
+        Objects.requireNonNull(registry, "CollectorRegistry is required.");
+
+        this.enabled = configuration.getBoolean(CK_SERVER_DEFLATE_ENABLED, CV_SERVER_DEFLATE_ENABLED);
+
+        this.takeover = configuration.getBoolean(CK_SERVER_DEFLATE_TAKEOVER, CV_SERVER_DEFLATE_TAKEOVER);
+
+        this.sample = configuration.getInt(CK_SERVER_DEFLATE_SAMPLE, CV_SERVER_DEFLATE_SAMPLE);
+
+        this.sentBytes = Gauge.build().name("dukas_proxy_websocket_sent_bytes")
+                .help("Uncompressed size of the messages sent to the WebSocket session.")
+                .labelNames("session", "deflate").register(registry);
+
+        this.sentRatio = Gauge.build().name("dukas_proxy_websocket_deflate_ratio")
+                .help("Compressed to uncompressed size ratio of the sampled messages, deflated without the context.")
+                .labelNames("session", "deflate").register(registry);
+
+        this.sentCpu = Gauge.build().name("dukas_proxy_websocket_deflate_cpu_seconds")
+                .help("CPU time of compressing the messages sent to the WebSocket session, estimated from the samples.")
+                .labelNames("session", "deflate").register(registry);
+
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (request instanceof HttpServletRequest && ((HttpServletRequest) request).getHeader(HEADER) != null) {
+            chain.doFilter(new Negotiation((HttpServletRequest) request), response);
+        } else {
+            chain.doFilter(request, response);
+        }
+
+    }
+
+    /**
+     * @return Rewritten extension offers, or {@code null} if none remains.
+     */
+    @VisibleForTesting
+    String rewrite(String header) {
+
+        List<String> offers = new ArrayList<>();
+
+        for (String offer : StringUtils.split(header, ",")) {
+
+            String value = offer.trim();
+
+            if (!EXTENSION.equalsIgnoreCase(StringUtils.substringBefore(value, ";").trim())) {
+                offers.add(value);
+                continue;
+            }
+
+            if (!enabled) {
+                continue;
+            }
+
+            if (!takeover && !StringUtils.containsIgnoreCase(value, SERVER_NO_TAKEOVER)) {
+                value = value + "; " + SERVER_NO_TAKEOVER;
+            }
+
+            if (!takeover && !StringUtils.containsIgnoreCase(value, CLIENT_NO_TAKEOVER)) {
+                value = value + "; " + CLIENT_NO_TAKEOVER;
+            }
+
+            offers.add(value);
+
+        }
+
+        return offers.isEmpty() ? null : String.join(", ", offers);
+
+    }
+
+    private class Negotiation extends HttpServletRequestWrapper {
+
+        private final String header;
+
+        Negotiation(HttpServletRequest request) {
+
+            super(request);
+
+            List<String> values = new ArrayList<>();
+
+            for (Enumeration<String> e = request.getHeaders(HEADER); e != null && e.hasMoreElements(); ) {
+                values.add(e.nextElement());
+            }
+
+            this.header = rewrite(String.join(", ", values));
+
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return HEADER.equalsIgnoreCase(name) ? header : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+
+            if (!HEADER.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+
+            return Collections.enumeration(header == null ? Collections.emptyList() : List.of(header));
+
+        }
+
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+
+        if (sample <= 0) {
+            return handler;
+        }
+
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+
+                Meter meter = new Meter(session);
+
+                session.getAttributes().put(Meter.class.getName(), meter);
+
+                super.afterConnectionEstablished(meter);
+
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+
+                try {
+                    super.afterConnectionClosed(session, status);
+                } finally {
+                    Object meter = session.getAttributes().remove(Meter.class.getName());
+                    if (meter instanceof Meter) {
+                        ((Meter) meter).close();
+                    }
+                }
+
+            }
+        };
+
+    }
+
+    @VisibleForTesting
+    static String[] getLabels(WebSocketSession session) {
+        return new String[]{session.getId(), String.valueOf(getExtension(session) != null)};
+    }
+
+    @VisibleForTesting
+    static WebSocketExtension getExtension(WebSocketSession session) {
+
+        List<WebSocketExtension> extensions = session.getExtensions();
+
+        if (extensions == null) {
+            return null;
+        }
+
+        return extensions.stream().filter(e -> EXTENSION.equalsIgnoreCase(e.getName())).findFirst().orElse(null);
+
+    }
+
+    /**
+     * Counts the messages sent to the session, and deflates the sampled messages independently of each other.
+     * Sends are serialized per session.
+     */
+    private class Meter extends WebSocketSessionDecorator {
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        private final byte[] buffer = new byte[8192];
+
+        private final String[] labels;
+
+        private boolean closed;
+
+        private long count;
+
+        private long bytes;
+
+        private long sampledBytes;
+
+        private long sampledCompressed;
+
+        private long sampledNanos;
+
+        Meter(WebSocketSession session) {
+
+            super(session);
+
+            this.labels = getLabels(session);
+
+        }
+
+        synchronized void close() {
+
+            closed = true;
+
+            deflater.end();
+
+            sentBytes.remove(labels);
+
+            sentRatio.remove(labels);
+
+            sentCpu.remove(labels);
+
+        }
+
+        @Override
+        public synchronized void sendMessage(WebSocketMessage<?> message) throws IOException {
+
+            super.sendMessage(message);
+
+            if (closed) {
+                return;
+            }
+
+            bytes += message.getPayloadLength();
+
+            sentBytes.labels(labels).set(bytes);
+
+            if (count++ % sample == 0) {
+                measure(message.getPayload());
+            }
+
+        }
+
+        private void measure(Object payload) {
+
+            byte[] input;
+
+            if (payload instanceof String) {
+                input = ((String) payload).getBytes(UTF_8);
+            } else if (payload instanceof ByteBuffer) {
+                ByteBuffer duplicate = ((ByteBuffer) payload).duplicate();
+                input = new byte[duplicate.remaining()];
+                duplicate.get(input);
+            } else {
+                return;
+            }
+
+            long start = threads.getCurrentThreadCpuTime();
+
+            deflater.reset(); // Context-free, regardless of the takeover.
+
+            deflater.setInput(input);
+
+            long compressed = 0;
+
+            int length;
+
+            do {
+                length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed += length;
+            } while (length == buffer.length);
+
+            long elapsed = threads.getCurrentThreadCpuTime() - start;
+
+            sampledBytes += input.length;
+
+            sampledCompressed += Math.max(compressed - TRAILER, 0);
+
+            sampledNanos += Math.max(elapsed, 0);
+
+            sentRatio.labels(labels).set((double) sampledCompressed / Math.max(sampledBytes, 1));
+
+            sentCpu.labels(labels).set(sampledNanos / 1e9 * bytes / Math.max(sampledBytes, 1));
+
+        }
+
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_DEPTH;
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+
+/**
+ * Publishes the top-N levels of the market depth per instrument. The full book is replied on subscription, and only
+ * the changed levels are published afterwards, with the sequence number for the clients to detect any gaps.
+ * <p>
+ * Levels are encoded as the parallel arrays of the level index, price and volume per side, without allocating any
+ * object per level. Prices and volumes are serialized as the strings, same as the ticks. A level with zero volume
+ * denotes the removal of the level.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@RestController
+public class Depth implements Listener {
+
+    private final Clock clock;
+
+    private final SimpMessageSendingOperations template;
+
+    private final int levels;
+
+    private final State[] states;
+
+    @Autowired
+    public Depth(Clock clock, Configuration configuration, SimpMessageSendingOperations template) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        this.levels = Math.max(configuration.getInt(CK_DEPTH_LEVELS, CV_DEPTH_LEVELS), 0);
+
+        this.states = new State[Instrument.values().length];
+
+        for (Instrument instrument : Instrument.values()) {
+            states[instrument.ordinal()] = new State(instrument, levels);
+        }
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (levels <= 0) {
+            return;
+        }
+
+        State state = states[instrument.ordinal()];
+
+        Map<String, Object> map;
+
+        synchronized (state) {
+            map = state.update(tick, clock.millis());
+        }
+
+        if (map != null) {
+            template.convertAndSend(TOPIC_DEPTH + "/" + instrument.name(), map);
+        }
+
+    }
+
+    @GetMapping(path = TOPIC_DEPTH + "/{instrument}")
+    @ResponseBody
+    @SubscribeMapping(TOPIC_DEPTH + "/{instrument}")
+    public Map<String, Object> getDepth(@PathVariable @DestinationVariable Instrument instrument) {
+
+        if (instrument == null) {
+            return null;
+        }
+
+        State state = states[instrument.ordinal()];
+
+        synchronized (state) {
+            return state.convert(clock.millis());
+        }
+
+    }
+
+    @VisibleForTesting
+    static class State {
+
+        private final Instrument instrument;
+
+        private final double[] askPrices;
+
+        private final double[] askVolumes;
+
+        private final double[] bidPrices;
+
+        private final double[] bidVolumes;
+
+        private int askDepth;
+
+        private int bidDepth;
+
+        private long time;
+
+        private long sequence;
+
+        State(Instrument instrument, int levels) {
+            this.instrument = instrument;
+            this.askPrices = new double[levels];
+            this.askVolumes = new double[levels];
+            this.bidPrices = new double[levels];
+            this.bidVolumes = new double[levels];
+        }
+
+        /**
+         * @return Changed levels, or {@code null} if nothing has changed.
+         */
+        Map<String, Object> update(ITick tick, long now) {
+
+            double[] asks = tick.getAsks();
+            double[] askSizes = tick.getAskVolumes();
+            double[] bids = tick.getBids();
+            double[] bidSizes = tick.getBidVolumes();
+
+            int askCount = depth(asks, askSizes);
+            int bidCount = depth(bids, bidSizes);
+
+            int askChanges = count(askPrices, askVolumes, askDepth, asks, askSizes, askCount);
+            int bidChanges = count(bidPrices, bidVolumes, bidDepth, bids, bidSizes, bidCount);
+
+            if (askChanges == 0 && bidChanges == 0) {
+                return null;
+            }
+
+            Map<String, Object> map = createMap(now, tick.getTime(), FALSE);
+
+            int[] ai = new int[askChanges];
+            double[] ap = new double[askChanges];
+            double[] av = new double[askChanges];
+            apply(askPrices, askVolumes, askDepth, asks, askSizes, askCount, ai, ap, av);
+            map.put("ai", ai);
+            map.put("ap", ap);
+            map.put("av", av);
+
+            int[] bi = new int[bidChanges];
+            double[] bp = new double[bidChanges];
+            double[] bv = new double[bidChanges];
+            apply(bidPrices, bidVolumes, bidDepth, bids, bidSizes, bidCount, bi, bp, bv);
+            map.put("bi", bi);
+            map.put("bp", bp);
+            map.put("bv", bv);
+
+            askDepth = askCount;
+            bidDepth = bidCount;
+            time = tick.getTime();
+            sequence++;
+
+            map.put("sq", sequence);
+
+            return map;
+
+        }
+
+        /**
+         * @return Full book of the current levels.
+         */
+        Map<String, Object> convert(long now) {
+
+            Map<String, Object> map = createMap(now, time, TRUE);
+            map.put("sq", sequence);
+
+            int[] ai = new int[askDepth];
+            int[] bi = new int[bidDepth];
+
+            for (int i = 0; i < ai.length; i++) {
+                ai[i] = i;
+            }
+
+            for (int i = 0; i < bi.length; i++) {
+                bi[i] = i;
+            }
+
+            map.put("ai", ai);
+            map.put("ap", Arrays.copyOf(askPrices, askDepth));
+            map.put("av", Arrays.copyOf(askVolumes, askDepth));
+            map.put("bi", bi);
+            map.put("bp", Arrays.copyOf(bidPrices, bidDepth));
+            map.put("bv", Arrays.copyOf(bidVolumes, bidDepth));
+
+            return map;
+
+        }
+
+        private Map<String, Object> createMap(long now, long tickTime, Boolean full) {
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("xe", now);
+            map.put("in", instrument.name());
+            map.put("is", instrument.getTickScale());
+            map.put("tt", tickTime);
+            map.put("ft", full);
+            return map;
+
+        }
+
+        private int depth(double[] prices, double[] volumes) {
+
+            if (prices == null || volumes == null) {
+                return 0;
+            }
+
+            return Math.min(Math.min(prices.length, volumes.length), askPrices.length);
+
+        }
+
+        private static int count(double[] currentPrices, double[] currentVolumes, int currentDepth,
+                                 double[] prices, double[] volumes, int depth) {
+
+            int changes = 0;
+
+            for (int i = 0; i < Math.max(currentDepth, depth); i++) {
+
+                double p = i < depth ? prices[i] : 0;
+
+                double v = i < depth ? volumes[i] : 0;
+
+                if (i >= currentDepth || currentPrices[i] != p || currentVolumes[i] != v) {
+                    changes++;
+                }
+
+            }
+
+            return changes;
+
+        }
+
+        private static void apply(double[] currentPrices, double[] currentVolumes, int currentDepth,
+                                  double[] prices, double[] volumes, int depth,
+                                  int[] indices, double[] changedPrices, double[] changedVolumes) {
+
+            int index = 0;
+
+            for (int i = 0; i < Math.max(currentDepth, depth); i++) {
+
+                double p = i < depth ? prices[i] : 0;
+
+                double v = i < depth ? volumes[i] : 0;
+
+                if (i < currentDepth && currentPrices[i] == p && currentVolumes[i] == v) {
+                    continue;
+                }
+
+                indices[index] = i;
+                changedPrices[index] = p;
+                changedVolumes[index] = v;
+                index++;
+
+                currentPrices[i] = p;
+                currentVolumes[i] = v;
+
+            }
+
+        }
+
+    }
+
+}
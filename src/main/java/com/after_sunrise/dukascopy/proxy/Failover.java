@@ -0,0 +1,260 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import com.google.common.annotations.VisibleForTesting;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import org.apache.commons.configuration2.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STANDBY_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STANDBY_THRESHOLD;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_STANDBY_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_STANDBY_THRESHOLD;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Merges the primary and the standby feeds, by publishing whichever arrives first and dropping the other as duplicate.
+ * Ticks are identified by its time and prices per instrument, and bars by its time per instrument and period.
+ * <p>
+ * The failover latency is measured as the elapsed time between the last tick of the primary and the first tick accepted
+ * from the standby only, which is the period the clients would have been starved without the standby.
+ * Since both feeds interleave while live, it is recorded only once the failure of the primary is confirmed, either by
+ * the standby delivering alone beyond the threshold, or by the primary being disconnected.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Failover implements Listener {
+
+    private static final String PRIMARY = "primary";
+
+    private static final String STANDBY = "standby";
+
+    private static final int SAME_TIME_CAPACITY = 8;
+
+    private final boolean enabled;
+
+    private final long threshold;
+
+    private final State[] states;
+
+    private final Map<String, Long> bars = new HashMap<>();
+
+    private final Counter ticks;
+
+    private final Histogram latency;
+
+    private volatile boolean disconnected;
+
+    @Autowired
+    public Failover(Configuration configuration, CollectorRegistry registry) {
+
+        Objects.requireNonNull(configuration, "Configuration is required.");
+
+        Objects.requireNonNull(registry, "CollectorRegistry is required.");
+
+        this.enabled = configuration.getBoolean(CK_STANDBY_ENABLED, CV_STANDBY_ENABLED);
+
+        this.threshold = MILLISECONDS.toNanos(
+                configuration.getLong(CK_STANDBY_THRESHOLD, CV_STANDBY_THRESHOLD.toMillis()));
+
+        this.states = new State[Instrument.values().length];
+
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new State();
+        }
+
+        this.ticks = Counter.build().name("dukas_proxy_feed_ticks_total")
+                .help("Number of ticks received per feed, either accepted or dropped as duplicate.")
+                .labelNames("feed", "result").register(registry);
+
+        this.latency = Histogram.build().name("dukas_proxy_feed_failover_seconds")
+                .help("Elapsed time between the last tick of the failed primary and the first tick of the standby only.")
+                .buckets(0.001, 0.01, 0.1, 0.5, 1, 2.5, 5, 10, 30).register(registry);
+
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onStart(int index, IContext context) {
+        if (index == 0) {
+            disconnected = false;
+        }
+    }
+
+    @Override
+    public void onStop(int index) {
+        if (index == 0) {
+            disconnected = true;
+        }
+    }
+
+    /**
+     * @return {@code true} if the tick is seen for the first time, and shall be published.
+     */
+    public boolean acceptTick(boolean standby, Instrument instrument, ITick tick) {
+
+        if (!enabled) {
+            return true;
+        }
+
+        State state = states[instrument.ordinal()];
+
+        long nanos = System.nanoTime();
+
+        long elapsed = -1;
+
+        boolean accepted;
+
+        synchronized (state) {
+
+            accepted = state.accept(tick.getTime(), tick.getAsk(), tick.getBid());
+
+            if (!standby) {
+
+                state.primaryNanos = nanos;
+
+                state.leadNanos = 0;
+
+            } else if (accepted && state.primaryNanos != 0) {
+
+                if (state.leadNanos == 0) {
+
+                    state.leadNanos = nanos; // Delivered by the standby alone, possibly by a race.
+
+                    state.leadElapsed = nanos - state.primaryNanos;
+
+                    state.confirmed = false;
+
+                }
+
+                if (!state.confirmed && (disconnected || nanos - state.leadNanos >= threshold)) {
+
+                    state.confirmed = true;
+
+                    elapsed = state.leadElapsed;
+
+                }
+
+            }
+
+        }
+
+        ticks.labels(standby ? STANDBY : PRIMARY, accepted ? "accepted" : "duplicate").inc();
+
+        if (elapsed >= 0) {
+            latency.observe(elapsed / 1e9);
+        }
+
+        return accepted;
+
+    }
+
+    /**
+     * @return {@code true} if the bar is newer than the last one accepted, and shall be published.
+     */
+    public synchronized boolean acceptBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+
+        if (!enabled) {
+            return true;
+        }
+
+        IBar bar = askBar != null ? askBar : bidBar;
+
+        if (bar == null) {
+            return false;
+        }
+
+        String key = instrument.name() + ":" + period.name();
+
+        Long previous = bars.get(key);
+
+        if (previous != null && previous >= bar.getTime()) {
+            return false;
+        }
+
+        bars.put(key, bar.getTime());
+
+        return true;
+
+    }
+
+    @VisibleForTesting
+    static class State {
+
+        private final double[] asks = new double[SAME_TIME_CAPACITY];
+
+        private final double[] bids = new double[SAME_TIME_CAPACITY];
+
+        private long time;
+
+        private int count;
+
+        /**
+         * Time of the last tick received from the primary, either accepted or dropped.
+         */
+        private long primaryNanos;
+
+        /**
+         * Time of the first tick accepted from the standby since the last tick of the primary, or zero if none.
+         */
+        private long leadNanos;
+
+        private long leadElapsed;
+
+        private boolean confirmed;
+
+        /**
+         * Keeps the prices of the ticks with the latest timestamp, so that multiple ticks within the same millisecond
+         * are distinguished from the duplicates.
+         */
+        boolean accept(long tickTime, double ask, double bid) {
+
+            if (tickTime < time) {
+                return false;
+            }
+
+            if (tickTime > time) {
+
+                time = tickTime;
+
+                count = 0;
+
+            } else {
+
+                for (int i = 0; i < count; i++) {
+                    if (asks[i] == ask && bids[i] == bid) {
+                        return false;
+                    }
+                }
+
+            }
+
+            if (count < SAME_TIME_CAPACITY) {
+                asks[count] = ask;
+                bids[count] = bid;
+                count++;
+            }
+
+            return true;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import org.apache.commons.configuration2.Configuration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_HISTORY_QUEUE;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_HISTORY_THREADS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_HISTORY_QUEUE;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_HISTORY_THREADS;
+import static com.after_sunrise.dukascopy.proxy.Config.newThreadFactory;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Bounded pool of the JForex history queries, shared by the {@link Subscriber} and the {@link Cache}, so that the
+ * configured threads and queue limit the concurrent queries of the whole proxy. Excess tasks are rejected with the
+ * {@link java.util.concurrent.RejectedExecutionException}, instead of being queued indefinitely.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class History implements Executor, DisposableBean {
+
+    private final Configuration configuration;
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public History(Configuration configuration) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        int threads = Math.max(configuration.getInt(CK_HISTORY_THREADS, CV_HISTORY_THREADS), 1);
+
+        int capacity = Math.max(configuration.getInt(CK_HISTORY_QUEUE, CV_HISTORY_QUEUE), 1);
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+                newThreadFactory(getClass(), true));
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, true);
+
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+}
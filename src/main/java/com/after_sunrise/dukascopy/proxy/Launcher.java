@@ -1,13 +1,22 @@
 package com.after_sunrise.dukascopy.proxy;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.Objects;
 
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STARTUP_EXIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STARTUP_LAZY;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_STARTUP_EXIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_STARTUP_LAZY;
+
 /**
  * @author takanori.takase
  * @version 0.0.0
@@ -18,11 +27,48 @@ public class Launcher extends SpringBootServletInitializer {
     @VisibleForTesting
     static volatile Class<?> main = null;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         Class<?> clazz = Objects.requireNonNullElse(main, Application.class);
 
-        SpringApplication.run(clazz, args);
+        preload();
+
+        // Loaded ahead of the context, from the same system properties and the properties file as the beans.
+        Configuration configuration = new Config().configuration();
+
+        SpringApplication application = new SpringApplication(clazz);
+
+        application.setLazyInitialization(configuration.getBoolean(CK_STARTUP_LAZY, CV_STARTUP_LAZY));
+
+        ConfigurableApplicationContext context = application.run(args);
+
+        if (configuration.getBoolean(CK_STARTUP_EXIT, CV_STARTUP_EXIT)) {
+            context.close(); // Training run for the class-data-sharing archive.
+        }
+
+    }
+
+    /**
+     * Loads the SDK in background, in parallel with the context startup, which is the bottleneck before connecting.
+     */
+    @VisibleForTesting
+    static Thread preload() {
+
+        Thread thread = new Thread(() -> {
+
+            try {
+                Config.loadClient();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LoggerFactory.getLogger(Launcher.class).debug("Skipped preloading.", e); // Retried on the bean.
+            }
+
+        }, Launcher.class.getSimpleName());
+
+        thread.setDaemon(true);
+
+        thread.start();
+
+        return thread;
 
     }
 
@@ -0,0 +1,40 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+
+/**
+ * Receives the ticks and bars after being published by the {@link Subscriber}, on the strategy thread.
+ * Implementations are expected to return immediately, and to be thread-safe when running multiple connections.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public interface Listener {
+
+    /**
+     * Notified when the context of the connection (index = 0 for the primary) is started.
+     */
+    default void onStart(int index, IContext context) {
+    }
+
+    default void onStop(int index) {
+    }
+
+    /**
+     * Notified for all of the messages, including the ones configured to be skipped from publishing.
+     */
+    default void onMessage(IMessage message) {
+    }
+
+    default void onTick(Instrument instrument, ITick tick) {
+    }
+
+    default void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_MARKET_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_MARKET_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_MARKET;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Publishes the latest prices of all the subscribed instruments in a single frame at a fixed interval,
+ * for the consumers which require a consistent view of the market instead of the individual ticks.
+ * Ticks replace the immutable quote of the instrument, and the frame is taken from the quotes at once.
+ * The frame is converted once per interval, and the same message is delivered to all of the subscribers.
+ * Disabled unless the interval is configured.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Market implements Listener, InitializingBean, DisposableBean, Runnable {
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final Configuration configuration;
+
+    private final SimpMessageSendingOperations template;
+
+    /**
+     * Resolved on demand, since the {@link Subscriber} depends on the listeners including this.
+     */
+    private final ObjectProvider<Subscriber> subscriber;
+
+    private final AtomicReferenceArray<Quote> quotes = new AtomicReferenceArray<>(INSTRUMENTS.length);
+
+    private final ScheduledExecutorService executor;
+
+    private long sequence;
+
+    @Autowired
+    public Market(Clock clock, Configuration configuration, SimpMessageSendingOperations template,
+                  ObjectProvider<Subscriber> subscriber) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        this.subscriber = Objects.requireNonNull(subscriber, "Subscriber is required.");
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        long millis = configuration.getLong(CK_MARKET_INTERVAL, CV_MARKET_INTERVAL.toMillis());
+
+        if (millis <= 0) {
+            return;
+        }
+
+        executor.scheduleAtFixedRate(this, millis, millis, MILLISECONDS);
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, false);
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+        quotes.set(instrument.ordinal(), new Quote(tick.getTime(), tick.getAsk(), tick.getBid()));
+    }
+
+    @Override
+    public void run() {
+
+        try {
+
+            Map<String, Object> frame = createFrame(subscriber.getObject().getSubscription().getInstruments());
+
+            if (frame != null) {
+                template.convertAndSend(TOPIC_MARKET, frame);
+            }
+
+        } catch (RuntimeException e) {
+
+            logger.warn("Failed to publish market.", e);
+
+        }
+
+    }
+
+    /**
+     * @return Frame of the instruments quoted, or {@code null} if none.
+     */
+    @VisibleForTesting
+    Map<String, Object> createFrame(Set<Instrument> instruments) {
+
+        Map<String, Object> prices = new LinkedHashMap<>();
+
+        for (Instrument instrument : INSTRUMENTS) {
+
+            if (instruments == null || !instruments.contains(instrument)) {
+                continue;
+            }
+
+            Quote quote = quotes.get(instrument.ordinal());
+
+            if (quote == null) {
+                continue;
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("is", instrument.getTickScale());
+            map.put("tt", quote.time);
+            map.put("ap", quote.ask);
+            map.put("bp", quote.bid);
+
+            prices.put(instrument.name(), map);
+
+        }
+
+        if (prices.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("xe", clock.millis());
+        frame.put("xq", ++sequence);
+        frame.put("mp", prices);
+
+        return frame;
+
+    }
+
+    @VisibleForTesting
+    static class Quote {
+
+        private final long time;
+
+        private final double ask;
+
+        private final double bid;
+
+        Quote(long time, double ask, double bid) {
+            this.time = time;
+            this.ask = ask;
+            this.bid = bid;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.Instrument;
+import com.google.gson.annotations.SerializedName;
+import org.immutables.gson.Gson;
+import org.immutables.value.Value;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Order request, and its acknowledgement and execution replied with the same {@code id}.
+ * Orders are identified by the {@code label}, which is generated on submission if not specified.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Gson.TypeAdapters
+@Value.Immutable(singleton = true)
+public abstract class Order {
+
+    @Nullable
+    @SerializedName("id")
+    public abstract String getId();
+
+    @Nullable
+    @SerializedName("epoch")
+    public abstract Instant getEpoch();
+
+    @Nullable
+    @SerializedName("success")
+    public abstract Boolean getSuccess();
+
+    @Nullable
+    @SerializedName("reason")
+    public abstract String getReason();
+
+    @Nullable
+    @SerializedName("label")
+    public abstract String getLabel();
+
+    @Nullable
+    @SerializedName("instrument")
+    public abstract Instrument getInstrument();
+
+    @Nullable
+    @SerializedName("command")
+    public abstract IEngine.OrderCommand getCommand();
+
+    @Nullable
+    @SerializedName("amount")
+    public abstract Double getAmount();
+
+    @Nullable
+    @SerializedName("price")
+    public abstract Double getPrice();
+
+    @Nullable
+    @SerializedName("slippage")
+    public abstract Double getSlippage();
+
+    @Nullable
+    @SerializedName("stopLoss")
+    public abstract Double getStopLoss();
+
+    @Nullable
+    @SerializedName("takeProfit")
+    public abstract Double getTakeProfit();
+
+    @Nullable
+    @SerializedName("state")
+    public abstract IOrder.State getState();
+
+}
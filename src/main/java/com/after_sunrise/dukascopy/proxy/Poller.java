@@ -0,0 +1,138 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_BAR;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_TICK;
+
+/**
+ * Counts the updates published per key, and notifies the callbacks parked until the next update of the key.
+ * The sequence is used as the entity tag of the REST responses, and the callbacks complete the long-poll requests.
+ * The tag is prefixed with the start time of the process, since the sequences are not retained across the restarts.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Poller implements Listener {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String epoch;
+
+    private final ConcurrentMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Queue<Runnable>> callbacks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public Poller(Clock clock) {
+
+        Objects.requireNonNull(clock, "Clock is required.");
+
+        this.epoch = Long.toString(clock.millis(), Character.MAX_RADIX);
+
+    }
+
+    public String getTickKey(Instrument instrument) {
+        return TOPIC_TICK + "/" + instrument.name();
+    }
+
+    public String getBarKey(Instrument instrument, Period period) {
+        return TOPIC_BAR + "/" + instrument.name() + "/" + period.name();
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+        update(getTickKey(instrument));
+    }
+
+    @Override
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+        update(getBarKey(instrument, period));
+    }
+
+    /**
+     * @return Number of updates published, or zero if never published.
+     */
+    public long getSequence(String key) {
+
+        AtomicLong sequence = sequences.get(key);
+
+        return sequence == null ? 0 : sequence.get();
+
+    }
+
+    /**
+     * @return Entity tag of the sequence, or {@code null} if never published.
+     */
+    public String getTag(long sequence) {
+        return sequence > 0 ? "\"" + epoch + "-" + sequence + "\"" : null;
+    }
+
+    /**
+     * Registers the callback to be invoked once, when the sequence of the key is no longer the given sequence.
+     */
+    public void await(String key, long sequence, Runnable callback) {
+
+        callbacks.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(callback);
+
+        if (getSequence(key) != sequence) {
+            notify(key); // Updated while registering.
+        }
+
+    }
+
+    public void cancel(String key, Runnable callback) {
+
+        Queue<Runnable> queue = callbacks.get(key);
+
+        if (queue != null) {
+            queue.remove(callback);
+        }
+
+    }
+
+    private void update(String key) {
+
+        sequences.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+
+        notify(key);
+
+    }
+
+    private void notify(String key) {
+
+        Queue<Runnable> queue = callbacks.get(key);
+
+        if (queue == null) {
+            return;
+        }
+
+        for (Runnable callback = queue.poll(); callback != null; callback = queue.poll()) {
+
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.warn("Callback failure : {}", key, e);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RECENT_COUNT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RECENT_WINDOW;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_RECENT_COUNT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_RECENT_WINDOW;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_RECENT;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_RECENT_REPLAY;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_RECENT;
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+
+/**
+ * Retains the recent ticks published per instrument, for the clients to catch up after reconnecting,
+ * without requesting the history from the platform.
+ * Ticks are kept in the primitive arrays of a fixed-length ring per instrument (count), and are skipped from
+ * the replies once older than the window (time). Each tick is numbered with a sequence per instrument, which is
+ * published along with the tick ({@code xq}), and is used to request the ticks published after the last one received.
+ * Disabled unless the count is configured.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@RestController
+public class Recent {
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final SimpMessageSendingOperations template;
+
+    private final int capacity;
+
+    private final long window;
+
+    private final AtomicReferenceArray<Window> windows = new AtomicReferenceArray<>(INSTRUMENTS.length);
+
+    @Autowired
+    public Recent(Clock clock, Configuration configuration, SimpMessageSendingOperations template) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        this.capacity = getCapacity(configuration.getInt(CK_RECENT_COUNT, CV_RECENT_COUNT));
+
+        this.window = configuration.getLong(CK_RECENT_WINDOW, CV_RECENT_WINDOW.toMillis());
+
+    }
+
+    /**
+     * @return Power of 2, or zero if disabled.
+     */
+    @VisibleForTesting
+    static int getCapacity(int count) {
+        return count <= 0 ? 0 : count == 1 ? 1 : Integer.highestOneBit(Math.min(count, MAX_CAPACITY) - 1) << 1;
+    }
+
+    /**
+     * Retains the tick to be published.
+     *
+     * @return Sequence of the tick within the instrument, or zero if disabled.
+     */
+    public long append(Instrument instrument, ITick tick) {
+
+        if (capacity == 0 || instrument == null || tick == null) {
+            return 0;
+        }
+
+        Window w = windows.get(instrument.ordinal());
+
+        if (w == null) {
+
+            windows.compareAndSet(instrument.ordinal(), null, new Window(capacity));
+
+            w = windows.get(instrument.ordinal());
+
+        }
+
+        return w.append(tick.getTime(), tick.getAsk(), tick.getAskVolume(), tick.getTotalAskVolume(),
+                tick.getBid(), tick.getBidVolume(), tick.getTotalBidVolume());
+
+    }
+
+    /**
+     * Retrieves the recent ticks with the time equal to or after the {@code since}, or all of them if not specified.
+     */
+    @GetMapping(path = ENDPOINT_RECENT + "/tick/{instrument}")
+    public ResponseEntity<List<Map<String, Object>>> getTicks(
+            @PathVariable Instrument instrument,
+            @RequestParam(name = "since", required = false) Long since) {
+
+        if (capacity == 0 || instrument == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        Window copy = select(instrument, 0, since == null ? Long.MIN_VALUE : since);
+
+        return ResponseEntity.ok(convert(instrument, copy));
+
+    }
+
+    /**
+     * Replies the recent ticks published after the {@code sequence}, or all of them if not specified.
+     */
+    @MessageMapping(ENDPOINT_RECENT_REPLAY)
+    public void replayTicks(@Payload Replay message,
+                            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String session) {
+
+        Replay reply = replay(message);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(session);
+        accessor.setLeaveMutable(true);
+
+        template.convertAndSendToUser(session, TOPIC_RECENT, reply, accessor.getMessageHeaders());
+
+    }
+
+    @VisibleForTesting
+    Replay replay(Replay message) {
+
+        Instrument instrument = message == null ? null : message.getInstrument();
+
+        String id = message == null ? null : message.getId();
+
+        if (capacity == 0 || instrument == null) {
+            return ImmutableReplay.builder().id(id).epoch(clock.instant()).success(FALSE).build();
+        }
+
+        long sequence = Math.max(Objects.requireNonNullElse(message.getSequence(), 0L), 0L);
+
+        Window copy = select(instrument, sequence, Long.MIN_VALUE);
+
+        boolean complete = copy.first <= sequence + 1 && sequence <= copy.sequence; // Otherwise lost or restarted.
+
+        logger.debug("Replaying ticks : {} - {} (sequence={})", instrument, copy.count, sequence);
+
+        return ImmutableReplay.builder()
+                .id(id)
+                .epoch(clock.instant())
+                .success(TRUE)
+                .instrument(instrument)
+                .sequence(copy.sequence)
+                .complete(complete)
+                .ticks(convert(instrument, copy))
+                .build();
+
+    }
+
+    @VisibleForTesting
+    Window select(Instrument instrument, long sequence, long since) {
+
+        long cutoff = window <= 0 ? Long.MIN_VALUE : clock.millis() - window;
+
+        Window w = windows.get(instrument.ordinal());
+
+        return w == null ? new Window(0) : w.copy(sequence, Math.max(since, cutoff));
+
+    }
+
+    @VisibleForTesting
+    List<Map<String, Object>> convert(Instrument instrument, Window copy) {
+
+        List<Map<String, Object>> ticks = new ArrayList<>(copy.count);
+
+        for (int i = 0; i < copy.count; i++) {
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("in", instrument.name());
+            map.put("is", instrument.getTickScale());
+            map.put("xq", copy.first + i);
+            map.put("tt", copy.times[i]);
+            map.put("ap", copy.asks[i]);
+            map.put("av", copy.askVolumes[i]);
+            map.put("at", copy.askTotals[i]);
+            map.put("bp", copy.bids[i]);
+            map.put("bv", copy.bidVolumes[i]);
+            map.put("bt", copy.bidTotals[i]);
+
+            ticks.add(map);
+
+        }
+
+        return ticks;
+
+    }
+
+    /**
+     * Fixed-length ring of the ticks in the parallel arrays, indexed by the sequence.
+     * Copies are compacted from the first sequence selected, and are not appended.
+     */
+    @VisibleForTesting
+    static class Window {
+
+        private final long mask;
+
+        private final long[] times;
+
+        private final double[] asks;
+
+        private final double[] askVolumes;
+
+        private final double[] askTotals;
+
+        private final double[] bids;
+
+        private final double[] bidVolumes;
+
+        private final double[] bidTotals;
+
+        /**
+         * Sequence of the last tick appended.
+         */
+        private long sequence;
+
+        /**
+         * Sequence of the first tick copied, or the next one if none.
+         */
+        private long first;
+
+        private int count;
+
+        Window(int capacity) {
+            this.mask = capacity - 1;
+            this.times = new long[capacity];
+            this.asks = new double[capacity];
+            this.askVolumes = new double[capacity];
+            this.askTotals = new double[capacity];
+            this.bids = new double[capacity];
+            this.bidVolumes = new double[capacity];
+            this.bidTotals = new double[capacity];
+            this.first = 1;
+        }
+
+        synchronized long append(long time, double ask, double askVolume, double askTotal,
+                                 double bid, double bidVolume, double bidTotal) {
+
+            long s = ++sequence;
+
+            int i = (int) (s & mask);
+            times[i] = time;
+            asks[i] = ask;
+            askVolumes[i] = askVolume;
+            askTotals[i] = askTotal;
+            bids[i] = bid;
+            bidVolumes[i] = bidVolume;
+            bidTotals[i] = bidTotal;
+
+            return s;
+
+        }
+
+        /**
+         * Copies the ticks after the sequence, skipping the ones before the time.
+         * Ticks of an instrument are appended in the time order, hence only the leading ones are skipped.
+         */
+        synchronized Window copy(long after, long since) {
+
+            long start = Math.max(Math.max(sequence - mask, 1), after + 1);
+
+            while (start <= sequence && times[(int) (start & mask)] < since) {
+                start++;
+            }
+
+            int length = (int) Math.max(sequence - start + 1, 0);
+
+            Window copy = new Window(length);
+
+            for (int n = 0; n < length; n++) {
+                int i = (int) ((start + n) & mask);
+                copy.times[n] = times[i];
+                copy.asks[n] = asks[i];
+                copy.askVolumes[n] = askVolumes[i];
+                copy.askTotals[n] = askTotals[i];
+                copy.bids[n] = bids[i];
+                copy.bidVolumes[n] = bidVolumes[i];
+                copy.bidTotals[n] = bidTotals[i];
+            }
+
+            copy.sequence = sequence;
+
+            copy.first = start;
+
+            copy.count = length;
+
+            return copy;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import com.google.gson.annotations.SerializedName;
+import org.immutables.gson.Gson;
+import org.immutables.value.Value;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replay request of the recent ticks published after the {@code sequence}, and its reply with the same {@code id}.
+ * The reply carries the sequence of the last tick published, and is not {@code complete} if some of the ticks after
+ * the requested sequence are no longer retained, or if the sequences have been reset by a restart.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Gson.TypeAdapters
+@Value.Immutable(singleton = true)
+public abstract class Replay {
+
+    @Nullable
+    @SerializedName("id")
+    public abstract String getId();
+
+    @Nullable
+    @SerializedName("epoch")
+    public abstract Instant getEpoch();
+
+    @Nullable
+    @SerializedName("success")
+    public abstract Boolean getSuccess();
+
+    @Nullable
+    @SerializedName("instrument")
+    public abstract Instrument getInstrument();
+
+    @Nullable
+    @SerializedName("sequence")
+    public abstract Long getSequence();
+
+    @Nullable
+    @SerializedName("complete")
+    public abstract Boolean getComplete();
+
+    @Nullable
+    @SerializedName("ticks")
+    public abstract List<Map<String, Object>> getTicks();
+
+}
@@ -0,0 +1,260 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RING_CAPACITY;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RING_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_RING_CAPACITY;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_RING_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.getPeriodIndex;
+import static com.after_sunrise.dukascopy.proxy.RingReader.EPOCH_RETIRED;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_CAPACITY;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_CURSOR;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_EPOCH;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_LENGTH;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_MAGIC;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_SIZE;
+import static com.after_sunrise.dukascopy.proxy.RingReader.HEADER_VERSION;
+import static com.after_sunrise.dukascopy.proxy.RingReader.LONG;
+import static com.after_sunrise.dukascopy.proxy.RingReader.MAGIC;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_INSTRUMENT;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_PERIOD;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_SEQUENCE;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_SIZE;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_TIME;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_TYPE;
+import static com.after_sunrise.dukascopy.proxy.RingReader.RECORD_VALUES;
+import static com.after_sunrise.dukascopy.proxy.RingReader.TYPE_BAR;
+import static com.after_sunrise.dukascopy.proxy.RingReader.TYPE_TICK;
+import static com.after_sunrise.dukascopy.proxy.RingReader.VERSION;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes the published ticks and bars into a memory-mapped ring file, as fixed-length binary records with sequences,
+ * for the consumers on the same host to read with the {@link RingReader}, instead of JSON over the loopback socket.
+ * Records are written by a single writer at a time, and are overwritten regardless of the readers.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Ring implements Listener, InitializingBean, DisposableBean {
+
+    private static final int MAX_CAPACITY = 1 << 23;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final Configuration configuration;
+
+    private FileChannel channel;
+
+    private volatile MappedByteBuffer buffer;
+
+    private long mask;
+
+    private long sequence;
+
+    @Autowired
+    public Ring(Clock clock, Configuration configuration) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+    }
+
+    @Override
+    public synchronized void afterPropertiesSet() throws IOException {
+
+        String value = configuration.getString(CK_RING_PATH, CV_RING_PATH);
+
+        if (StringUtils.isBlank(value)) {
+            return;
+        }
+
+        Path path = Paths.get(value).toAbsolutePath();
+
+        int capacity = getCapacity(configuration.getInt(CK_RING_CAPACITY, CV_RING_CAPACITY));
+
+        if (Files.exists(path) && Files.size(path) != HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+            retire(path);
+        }
+
+        channel = FileChannel.open(path, CREATE, READ, WRITE);
+
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+        buffer.order(ByteOrder.nativeOrder());
+
+        mask = capacity - 1;
+
+        sequence = 0;
+
+        LONG.setVolatile(buffer, HEADER_CURSOR, 0L);
+
+        for (int i = 0; i < capacity; i++) {
+            LONG.setRelease(buffer, HEADER_SIZE + i * RECORD_SIZE + RECORD_SEQUENCE, 0L);
+        }
+
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+
+        buffer.putInt(HEADER_VERSION, VERSION);
+
+        buffer.putInt(HEADER_CAPACITY, capacity);
+
+        buffer.putInt(HEADER_LENGTH, RECORD_SIZE);
+
+        LONG.setVolatile(buffer, HEADER_EPOCH, clock.millis());
+
+        logger.info("Writing ring : {} (capacity={})", path, capacity);
+
+    }
+
+    /**
+     * Deletes the file of the previous capacity, then marks it as retired, for its readers to reopen the new file
+     * instead of reading the deleted one indefinitely. Mappings of the readers remain valid until reopened.
+     */
+    @VisibleForTesting
+    static void retire(Path path) throws IOException {
+
+        try (FileChannel previous = FileChannel.open(path, READ, WRITE)) {
+
+            MappedByteBuffer header = previous.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+            header.order(ByteOrder.nativeOrder());
+
+            Files.delete(path);
+
+            LONG.setVolatile(header, HEADER_EPOCH, EPOCH_RETIRED);
+
+        }
+
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+
+        buffer = null;
+
+        if (channel != null) {
+            channel.close();
+        }
+
+    }
+
+    /**
+     * @return Power of 2, within the limit of a single mapped buffer.
+     */
+    @VisibleForTesting
+    static int getCapacity(int capacity) {
+        return capacity <= 1 ? 2 : Integer.highestOneBit(Math.min(capacity, MAX_CAPACITY) - 1) << 1;
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (buffer == null) {
+            return;
+        }
+
+        write(TYPE_TICK, instrument, null, tick.getTime(),
+                tick.getAsk(), tick.getBid(), tick.getAskVolume(), tick.getBidVolume(), 0, 0, 0, 0, 0, 0);
+
+    }
+
+    @Override
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+
+        if (buffer == null || (askBar == null && bidBar == null)) {
+            return;
+        }
+
+        long time = askBar != null ? askBar.getTime() : bidBar.getTime();
+
+        // Values of the missing side are written as NaN.
+        write(TYPE_BAR, instrument, period, time,
+                askBar == null ? Double.NaN : askBar.getOpen(),
+                askBar == null ? Double.NaN : askBar.getHigh(),
+                askBar == null ? Double.NaN : askBar.getLow(),
+                askBar == null ? Double.NaN : askBar.getClose(),
+                askBar == null ? Double.NaN : askBar.getVolume(),
+                bidBar == null ? Double.NaN : bidBar.getOpen(),
+                bidBar == null ? Double.NaN : bidBar.getHigh(),
+                bidBar == null ? Double.NaN : bidBar.getLow(),
+                bidBar == null ? Double.NaN : bidBar.getClose(),
+                bidBar == null ? Double.NaN : bidBar.getVolume());
+
+    }
+
+    /**
+     * Marks the record as being written, writes the values, then publishes the sequence of the record and the cursor.
+     */
+    @VisibleForTesting
+    synchronized void write(int type, Instrument instrument, Period period, long time, double v0, double v1,
+                            double v2, double v3, double v4, double v5, double v6, double v7, double v8, double v9) {
+
+        MappedByteBuffer b = buffer;
+
+        if (b == null) {
+            return; // Closed.
+        }
+
+        long s = ++sequence;
+
+        int offset = HEADER_SIZE + (int) (s & mask) * RECORD_SIZE;
+
+        LONG.setOpaque(b, offset + RECORD_SEQUENCE, -1L);
+
+        VarHandle.storeStoreFence();
+
+        b.putInt(offset + RECORD_TYPE, type);
+        b.putInt(offset + RECORD_INSTRUMENT, instrument.ordinal());
+        b.putInt(offset + RECORD_PERIOD, getPeriodIndex(period)); // -1 for the custom periods.
+        b.putLong(offset + RECORD_TIME, time);
+
+        int values = offset + RECORD_VALUES;
+        b.putDouble(values, v0);
+        b.putDouble(values + Double.BYTES, v1);
+        b.putDouble(values + Double.BYTES * 2, v2);
+        b.putDouble(values + Double.BYTES * 3, v3);
+        b.putDouble(values + Double.BYTES * 4, v4);
+        b.putDouble(values + Double.BYTES * 5, v5);
+        b.putDouble(values + Double.BYTES * 6, v6);
+        b.putDouble(values + Double.BYTES * 7, v7);
+        b.putDouble(values + Double.BYTES * 8, v8);
+        b.putDouble(values + Double.BYTES * 9, v9);
+
+        LONG.setRelease(b, offset + RECORD_SEQUENCE, s);
+
+        LONG.setRelease(b, HEADER_CURSOR, s);
+
+    }
+
+}
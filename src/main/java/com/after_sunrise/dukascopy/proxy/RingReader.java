@@ -0,0 +1,370 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the ticks and bars from the memory-mapped ring file written by the {@link Ring} of the proxy on the same host.
+ * Polling reads the shared memory only, without system calls nor allocations. The reader is not thread-safe.
+ *
+ * <pre>
+ * try (RingReader reader = new RingReader(Paths.get("dukas-proxy.ring"))) {
+ *     RingReader.Record record = new RingReader.Record();
+ *     while (running) {
+ *         if (reader.poll(record)) {
+ *             ...
+ *         } else {
+ *             Thread.onSpinWait();
+ *         }
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The file consists of a header followed by the fixed-length records, all in the native byte order.
+ * <ul>
+ * <li>Header : magic, version, capacity (power of 2), record length, epoch (writer start time), and the cursor
+ * (sequence of the last published record) on its own cache line.</li>
+ * <li>Record : sequence, type, instrument and period ordinals, time, and the prices and volumes.
+ * The sequence is set to -1 while being written, and to the new sequence after the values are written.</li>
+ * </ul>
+ * Instruments and periods are identified by their ordinals (and -1 for the custom periods),
+ * hence the reader requires the same SDK version as the proxy.
+ * <p>
+ * Restarts of the writer are detected by the change of the epoch, upon which the path is reopened, since the file may
+ * have been replaced with another capacity. The replaced file is marked as retired, for its readers to reopen as well.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class RingReader implements Closeable {
+
+    public static final int MAGIC = 0x444b5247; // "DKRG"
+
+    public static final int VERSION = 1;
+
+    public static final int TYPE_TICK = 1;
+
+    public static final int TYPE_BAR = 2;
+
+    static final int HEADER_MAGIC = 0;
+
+    static final int HEADER_VERSION = 4;
+
+    static final int HEADER_CAPACITY = 8;
+
+    static final int HEADER_LENGTH = 12;
+
+    static final int HEADER_EPOCH = 16;
+
+    static final int HEADER_CURSOR = 64;
+
+    static final int HEADER_SIZE = 128;
+
+    /**
+     * Epoch of the file deleted by the writer, for the readers to reopen the path.
+     */
+    static final long EPOCH_RETIRED = -1;
+
+    static final int RECORD_SEQUENCE = 0;
+
+    static final int RECORD_TYPE = 8;
+
+    static final int RECORD_INSTRUMENT = 12;
+
+    static final int RECORD_PERIOD = 16;
+
+    static final int RECORD_TIME = 24;
+
+    /**
+     * Ask and bid prices and volumes of tick, or ask and bid OHLCV of bar.
+     */
+    static final int RECORD_VALUES = 32;
+
+    static final int RECORD_VALUE_COUNT = 10;
+
+    static final int RECORD_SIZE = 128;
+
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private static final Period[] PERIODS = Period.values();
+
+    private final Path path;
+
+    private FileChannel channel;
+
+    private ByteBuffer buffer;
+
+    private long mask;
+
+    private long epoch;
+
+    private long next;
+
+    private long losses;
+
+    public RingReader(Path path) throws IOException {
+
+        this.path = path;
+
+        open();
+
+        reset();
+
+    }
+
+    private void open() throws IOException {
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+            header.order(ByteOrder.nativeOrder());
+
+            if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException("Not a ring file : " + path);
+            }
+
+            int capacity = header.getInt(HEADER_CAPACITY);
+
+            if (header.getInt(HEADER_LENGTH) != RECORD_SIZE || Integer.bitCount(capacity) != 1) {
+                throw new IOException("Unsupported ring file : " + path);
+            }
+
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+            records.order(ByteOrder.nativeOrder());
+
+            this.channel = channel;
+
+            this.buffer = records;
+
+            this.mask = capacity - 1;
+
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+
+            throw e;
+
+        }
+
+    }
+
+    /**
+     * Replaces the mapping with the current file of the path, or retains the previous one to be retried if not ready.
+     */
+    private void reopen() {
+
+        FileChannel previous = channel;
+
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            return; // Being replaced, retried on the next poll.
+        }
+
+        try {
+            previous.close();
+        } catch (IOException e) {
+            // Ignored, since the mapping is no longer read.
+        }
+
+        reset();
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Starts reading from the next record to be published.
+     */
+    public void reset() {
+
+        epoch = (long) LONG.getVolatile(buffer, HEADER_EPOCH);
+
+        next = (long) LONG.getVolatile(buffer, HEADER_CURSOR) + 1;
+
+    }
+
+    /**
+     * Starts reading from the oldest record available.
+     */
+    public void rewind() {
+
+        reset();
+
+        next = Math.max(next - mask - 1, 1);
+
+    }
+
+    /**
+     * @return Number of the records overwritten before being read, since this reader is opened.
+     */
+    public long getLosses() {
+        return losses;
+    }
+
+    /**
+     * @return Sequence of the record to be read next.
+     */
+    public long getNext() {
+        return next;
+    }
+
+    /**
+     * Copies the next record, if available.
+     *
+     * @param record Record to be overwritten.
+     * @return {@code true} if copied, {@code false} if no records are available yet.
+     */
+    public boolean poll(Record record) {
+
+        long cursor = (long) LONG.getAcquire(buffer, HEADER_CURSOR);
+
+        if (cursor < next) {
+
+            if ((long) LONG.getVolatile(buffer, HEADER_EPOCH) != epoch) {
+                reopen(); // Writer restarted, possibly with another file.
+            }
+
+            return false;
+
+        }
+
+        if (cursor - next > mask) {
+
+            losses += cursor - mask - next;
+
+            next = cursor - mask; // Lapped by the writer.
+
+        }
+
+        int offset = HEADER_SIZE + (int) (next & mask) * RECORD_SIZE;
+
+        long sequence = (long) LONG.getAcquire(buffer, offset + RECORD_SEQUENCE);
+
+        if (sequence != next) {
+            return false; // Being written.
+        }
+
+        record.type = buffer.getInt(offset + RECORD_TYPE);
+
+        record.instrument = buffer.getInt(offset + RECORD_INSTRUMENT);
+
+        record.period = buffer.getInt(offset + RECORD_PERIOD);
+
+        record.time = buffer.getLong(offset + RECORD_TIME);
+
+        for (int i = 0; i < RECORD_VALUE_COUNT; i++) {
+            record.values[i] = buffer.getDouble(offset + RECORD_VALUES + i * Double.BYTES);
+        }
+
+        VarHandle.acquireFence();
+
+        if ((long) LONG.getVolatile(buffer, offset + RECORD_SEQUENCE) != sequence) {
+            return false; // Overwritten while reading, retried (and lapped) on the next poll.
+        }
+
+        record.sequence = sequence;
+
+        next = sequence + 1;
+
+        return true;
+
+    }
+
+    /**
+     * Mutable copy of a record, to be reused across the polls.
+     */
+    public static final class Record {
+
+        private final double[] values = new double[RECORD_VALUE_COUNT];
+
+        private long sequence;
+
+        private int type;
+
+        private int instrument;
+
+        private int period;
+
+        private long time;
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return {@link RingReader#TYPE_TICK} or {@link RingReader#TYPE_BAR}.
+         */
+        public int getType() {
+            return type;
+        }
+
+        public Instrument getInstrument() {
+            return instrument >= 0 && instrument < INSTRUMENTS.length ? INSTRUMENTS[instrument] : null;
+        }
+
+        /**
+         * @return Period of the bar, or {@code null} for the tick.
+         */
+        public Period getPeriod() {
+            return type == TYPE_BAR && period >= 0 && period < PERIODS.length ? PERIODS[period] : null;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public double getAsk() {
+            return values[0];
+        }
+
+        public double getBid() {
+            return values[1];
+        }
+
+        public double getAskVolume() {
+            return values[2];
+        }
+
+        public double getBidVolume() {
+            return values[3];
+        }
+
+        /**
+         * @param index 0 to 4 for ask open, high, low, close and volume, 5 to 9 for bid.
+         */
+        public double getBarValue(int index) {
+            return values[index];
+        }
+
+        @Override
+        public String toString() {
+            return "Record{sequence=" + sequence + ", type=" + type + ", instrument=" + getInstrument()
+                    + ", period=" + getPeriod() + ", time=" + time + ", values=" + Arrays.toString(values) + "}";
+        }
+
+    }
+
+}
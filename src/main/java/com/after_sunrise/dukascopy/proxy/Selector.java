@@ -0,0 +1,387 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_ASK;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_BID;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_INSTRUMENT;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_SCALE;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_SYNTHETIC;
+
+/**
+ * Filters the messages delivered per subscription, with the selector specified in the STOMP SUBSCRIBE header.
+ * <ul>
+ * <li>{@code move>=5} : Mid price moved by 5 ticks or more, since the last delivery of the instrument.</li>
+ * <li>{@code spread>=20} / {@code spread<=20} : Spread is 20 ticks or wider / narrower.</li>
+ * <li>{@code instrument=USDJPY,EURUSD} : Instrument is one of the listed, matching the synthetic names as well.</li>
+ * </ul>
+ * Clauses are separated by {@code ;} and all of them need to be satisfied (cf: {@code move>=5;instrument=USDJPY}).
+ * Price clauses are applied to the ticks only. The selector is parsed once on subscribe, and the messages are
+ * evaluated per subscription from the in-process headers, so that the rejected messages are not written to the socket.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Selector implements ChannelInterceptor {
+
+    static final String SELECTOR = "selector";
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private static final int SLOTS = INSTRUMENTS.length + 1;
+
+    /**
+     * Multipliers to convert the prices into the number of ticks, by the instrument ordinal.
+     */
+    private static final double[] SCALES = Stream.of(INSTRUMENTS)
+            .mapToDouble(i -> Math.pow(10, i.getTickScale())).toArray();
+
+    /**
+     * Tolerance of the floating point errors, in the number of ticks.
+     */
+    private static final double EPSILON = 1e-6;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Filters by the subscription id, by the session id.
+     */
+    private final Map<String, Map<String, Filter>> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+
+        MessageHeaders headers = message.getHeaders();
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+
+        String session = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (type == null || session == null) {
+            return message;
+        }
+
+        switch (type) {
+            case MESSAGE:
+                return accept(message, session) ? message : null;
+            case SUBSCRIBE:
+                subscribe(message, session);
+                return message;
+            case UNSUBSCRIBE:
+                unsubscribe(headers, session);
+                return message;
+            case DISCONNECT:
+                sessions.remove(session);
+                return message;
+            default:
+                return message;
+        }
+
+    }
+
+    @VisibleForTesting
+    void subscribe(Message<?> message, String session) {
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+
+        String subscription = accessor.getSubscriptionId();
+
+        String selector = accessor.getFirstNativeHeader(SELECTOR);
+
+        if (subscription == null || StringUtils.isBlank(selector)) {
+            return;
+        }
+
+        try {
+
+            Filter filter = compile(selector);
+
+            sessions.computeIfAbsent(session, k -> new ConcurrentHashMap<>()).put(subscription, filter);
+
+            logger.debug("Filtering subscription : {}/{} ({})", session, subscription, selector);
+
+        } catch (RuntimeException e) {
+
+            logger.warn("Ignoring invalid selector : {}/{} ({})", session, subscription, selector, e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void unsubscribe(MessageHeaders headers, String session) {
+
+        Map<String, Filter> filters = sessions.get(session);
+
+        String subscription = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+
+        if (filters != null && subscription != null) {
+            filters.remove(subscription);
+        }
+
+    }
+
+    @VisibleForTesting
+    Filter compile(String selector) {
+
+        boolean[] instruments = null;
+
+        Set<String> synthetics = null;
+
+        double move = 0;
+
+        double spreadMin = Double.NEGATIVE_INFINITY;
+
+        double spreadMax = Double.POSITIVE_INFINITY;
+
+        for (String clause : StringUtils.split(selector, ";")) {
+
+            String value = clause.trim();
+
+            if (value.isEmpty()) {
+                continue;
+            }
+
+            if (value.startsWith("instrument=")) {
+
+                instruments = new boolean[SLOTS];
+
+                synthetics = new HashSet<>();
+
+                for (String name : StringUtils.split(StringUtils.substringAfter(value, "="), ",")) {
+
+                    String trimmed = name.trim();
+
+                    Instrument instrument = Stream.of(INSTRUMENTS)
+                            .filter(i -> i.name().equals(trimmed)).findFirst().orElse(null);
+
+                    if (instrument != null) {
+                        instruments[instrument.ordinal()] = true;
+                    } else {
+                        synthetics.add(trimmed);
+                    }
+
+                }
+
+            } else if (value.startsWith("move>=")) {
+
+                move = parseTicks(value);
+
+            } else if (value.startsWith("spread>=")) {
+
+                spreadMin = parseTicks(value);
+
+            } else if (value.startsWith("spread<=")) {
+
+                spreadMax = parseTicks(value);
+
+            } else {
+
+                throw new IllegalArgumentException("Unknown clause : " + value);
+
+            }
+
+        }
+
+        return new Filter(instruments, synthetics, move, spreadMin, spreadMax);
+
+    }
+
+    private static double parseTicks(String clause) {
+
+        double ticks = Double.parseDouble(StringUtils.substringAfter(clause, "=").trim());
+
+        if (!Double.isFinite(ticks) || ticks < 0) {
+            throw new IllegalArgumentException("Invalid ticks : " + clause);
+        }
+
+        return ticks;
+
+    }
+
+    /**
+     * @return {@code true} to deliver the message.
+     */
+    @VisibleForTesting
+    boolean accept(Message<?> message, String session) {
+
+        Map<String, Filter> filters = sessions.get(session);
+
+        if (filters == null) {
+            return true;
+        }
+
+        MessageHeaders headers = message.getHeaders();
+
+        String subscription = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+
+        Filter filter = subscription == null ? null : filters.get(subscription);
+
+        if (filter == null) {
+            return true;
+        }
+
+        Object ordinal = headers.get(HEADER_INSTRUMENT);
+
+        Object ask = headers.get(HEADER_ASK);
+
+        Object bid = headers.get(HEADER_BID);
+
+        Object synthetic = headers.get(HEADER_SYNTHETIC);
+
+        if (synthetic instanceof String) {
+
+            Object scale = headers.get(HEADER_SCALE);
+
+            if (!(scale instanceof Integer) || !(ask instanceof Double) || !(bid instanceof Double)) {
+                return filter.test((String) synthetic);
+            }
+
+            return filter.test((String) synthetic, (Integer) scale, (Double) ask, (Double) bid, message);
+
+        }
+
+        if (!(ordinal instanceof Integer)) {
+            return filter.instruments == null; // Relayed or not an instrument message.
+        }
+
+        if (!(ask instanceof Double) || !(bid instanceof Double)) {
+            return filter.test((Integer) ordinal);
+        }
+
+        return filter.test((Integer) ordinal, (Double) ask, (Double) bid, message);
+
+    }
+
+    @VisibleForTesting
+    static class Filter {
+
+        private final boolean[] instruments;
+
+        private final Set<String> synthetics;
+
+        private final double move;
+
+        private final double spreadMin;
+
+        private final double spreadMax;
+
+        /**
+         * Last delivery, by the instrument ordinal.
+         */
+        private final Mark[] marks;
+
+        /**
+         * Last delivery, by the synthetic name.
+         */
+        private final Map<String, Mark> syntheticMarks;
+
+        Filter(boolean[] instruments, Set<String> synthetics, double move, double spreadMin, double spreadMax) {
+
+            this.instruments = instruments;
+            this.synthetics = synthetics;
+            this.move = move;
+            this.spreadMin = spreadMin;
+            this.spreadMax = spreadMax;
+            this.marks = move > 0 ? Stream.generate(Mark::new).limit(SLOTS).toArray(Mark[]::new) : null;
+            this.syntheticMarks = move > 0 ? new ConcurrentHashMap<>() : null;
+
+        }
+
+        boolean test(int ordinal) {
+            return instruments == null || instruments[ordinal];
+        }
+
+        boolean test(String synthetic) {
+            return synthetics == null || synthetics.contains(synthetic);
+        }
+
+        boolean test(int ordinal, double ask, double bid, Message<?> message) {
+
+            if (!test(ordinal)) {
+                return false;
+            }
+
+            return test(SCALES[ordinal], ask, bid, message, marks == null ? null : marks[ordinal]);
+
+        }
+
+        boolean test(String synthetic, int scale, double ask, double bid, Message<?> message) {
+
+            if (!test(synthetic)) {
+                return false;
+            }
+
+            Mark mark = syntheticMarks == null ? null : syntheticMarks.computeIfAbsent(synthetic, k -> new Mark());
+
+            return test(Math.pow(10, scale), ask, bid, message, mark);
+
+        }
+
+        private boolean test(double scale, double ask, double bid, Message<?> message, Mark mark) {
+
+            double spread = (ask - bid) * scale;
+
+            if (spread + EPSILON < spreadMin || spreadMax < spread - EPSILON) {
+                return false;
+            }
+
+            if (mark == null) {
+                return true;
+            }
+
+            double mid = (ask + bid) * 0.5;
+
+            synchronized (mark) {
+
+                if (mark.accept == message) {
+                    return true; // Re-sent.
+                }
+
+                if (!Double.isNaN(mark.mid) && Math.abs(mid - mark.mid) * scale + EPSILON < move) {
+                    return false;
+                }
+
+                mark.mid = mid;
+
+                mark.accept = message;
+
+                return true;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Mid price and the message of the last delivery, for accepting the ones re-sent after being held by the
+     * {@link Throttle}.
+     */
+    private static class Mark {
+
+        private double mid = Double.NaN;
+
+        private Message<?> accept;
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IAccount;
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IStrategy;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+
+import java.util.Objects;
+
+/**
+ * Strategy of an additional connection, delegating its callbacks to the shared {@link Subscriber}.
+ * Messages and account updates are dropped, since every connection of the same account receives the same ones, which
+ * are already published by the {@link Subscriber} of the primary connection. Those are forwarded only if the connection
+ * logs in with its own account, overridden with {@link Config#getShardKey(int, String)}.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Shard implements IStrategy {
+
+    private final Subscriber subscriber;
+
+    private final int index;
+
+    private final boolean forward;
+
+    public Shard(Subscriber subscriber, int index, boolean forward) {
+
+        this.subscriber = Objects.requireNonNull(subscriber, "Subscriber is required.");
+
+        this.index = index;
+
+        this.forward = forward;
+
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + index + "]";
+    }
+
+    @Override
+    public void onStart(IContext context) {
+        subscriber.startContext(index, context);
+    }
+
+    @Override
+    public void onStop() {
+        subscriber.stopContext(index);
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+        subscriber.receiveTick(index, instrument, tick);
+    }
+
+    @Override
+    public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+        subscriber.receiveBar(index, instrument, period, askBar, bidBar);
+    }
+
+    @Override
+    public void onMessage(IMessage message) {
+        if (forward) {
+            subscriber.onMessage(message);
+        }
+    }
+
+    @Override
+    public void onAccount(IAccount account) {
+        if (forward) {
+            subscriber.onAccount(account);
+        }
+    }
+
+}
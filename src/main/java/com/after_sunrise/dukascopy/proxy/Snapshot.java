@@ -0,0 +1,284 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SNAPSHOT_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SNAPSHOT_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SNAPSHOT_INTERVAL;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SNAPSHOT_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Last known subscription and values, optionally persisted as a gzipped JSON file for warm starts.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Snapshot implements InitializingBean, DisposableBean, Runnable {
+
+    private static final Type TYPE_SAVE = new TypeToken<State<Object>>() {
+    }.getType();
+
+    private static final Type TYPE_LOAD = new TypeToken<State<JsonElement>>() {
+    }.getType();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Configuration configuration;
+
+    private final Gson gson;
+
+    private final AtomicReference<Set<Instrument>> instruments = new AtomicReference<>();
+
+    private final AtomicReference<Map<String, Object>> account = new AtomicReference<>();
+
+    private final ConcurrentMap<String, Map<String, Object>> ticks = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Map<String, Object>> bars = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public Snapshot(Configuration configuration, Gson gson) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.gson = Objects.requireNonNull(gson, "Gson is required.");
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        Path path = getPath();
+
+        if (path == null) {
+            return;
+        }
+
+        load(path);
+
+        long millis = configuration.getLong(CK_SNAPSHOT_INTERVAL, CV_SNAPSHOT_INTERVAL.toMillis());
+
+        executor.scheduleWithFixedDelay(this, millis, millis, MILLISECONDS);
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, false);
+
+    }
+
+    @Override
+    public void run() {
+
+        if (dirty.getAndSet(false)) {
+            save();
+        }
+
+    }
+
+    @VisibleForTesting
+    Path getPath() {
+
+        String path = configuration.getString(CK_SNAPSHOT_PATH, CV_SNAPSHOT_PATH);
+
+        return StringUtils.isBlank(path) ? null : Paths.get(path).toAbsolutePath();
+
+    }
+
+    @VisibleForTesting
+    void load(Path path) {
+
+        if (!Files.isReadable(path)) {
+
+            logger.info("Skipped loading snapshot : {}", path);
+
+            return;
+
+        }
+
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(path)), UTF_8)) {
+
+            State<JsonElement> state = gson.fromJson(reader, TYPE_LOAD);
+
+            if (state == null) {
+                return;
+            }
+
+            if (state.instruments != null) {
+
+                Set<Instrument> values = EnumSet.noneOf(Instrument.class);
+
+                state.instruments.stream().filter(Objects::nonNull).forEach(values::add);
+
+                instruments.set(Collections.unmodifiableSet(values));
+
+            }
+
+            if (state.account != null) {
+                account.set(new LinkedHashMap<>(state.account));
+            }
+
+            if (state.ticks != null) {
+                state.ticks.forEach((k, v) -> ticks.put(k, new LinkedHashMap<>(v)));
+            }
+
+            if (state.bars != null) {
+                state.bars.forEach((k, v) -> bars.put(k, new LinkedHashMap<>(v)));
+            }
+
+            logger.info("Loaded snapshot : {} (instruments={}, ticks={}, bars={})",
+                    path, state.instruments, ticks.size(), bars.size());
+
+        } catch (Exception e) {
+
+            logger.warn("Failed to load snapshot : {}", path, e);
+
+        }
+
+    }
+
+    /**
+     * Writes the current state into a temporary file, and then atomically replaces the snapshot file.
+     */
+    public synchronized void save() {
+
+        Path path = getPath();
+
+        if (path == null) {
+            return;
+        }
+
+        State<Object> state = new State<>();
+        state.instruments = instruments.get();
+        state.account = account.get();
+        state.ticks = new LinkedHashMap<>(ticks);
+        state.bars = new LinkedHashMap<>(bars);
+
+        try {
+
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), UTF_8)) {
+                gson.toJson(state, TYPE_SAVE, writer);
+            }
+
+            Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+
+            logger.debug("Saved snapshot : {} (ticks={}, bars={})", path, state.ticks.size(), state.bars.size());
+
+        } catch (IOException | RuntimeException e) {
+
+            logger.warn("Failed to save snapshot : {}", path, e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    String getBarKey(Instrument instrument, Period period) {
+        return instrument.name() + ":" + period.name();
+    }
+
+    public Set<Instrument> getInstruments() {
+        return instruments.get();
+    }
+
+    public void setInstruments(Set<Instrument> values) {
+        instruments.set(values);
+        dirty.set(true);
+    }
+
+    public Map<String, Object> getAccount() {
+        return account.get();
+    }
+
+    public void setAccount(Map<String, Object> values) {
+        account.set(values);
+        dirty.set(true);
+    }
+
+    public Map<String, Object> getTick(Instrument instrument) {
+        return ticks.get(instrument.name());
+    }
+
+    public void setTick(Instrument instrument, Map<String, Object> values) {
+        ticks.put(instrument.name(), values);
+        dirty.set(true);
+    }
+
+    public Map<String, Object> getBar(Instrument instrument, Period period) {
+        return bars.get(getBarKey(instrument, period));
+    }
+
+    public void setBar(Instrument instrument, Period period, Map<String, Object> values) {
+        bars.put(getBarKey(instrument, period), values);
+        dirty.set(true);
+    }
+
+    /**
+     * Serialized form of the snapshot file. Values are read back as raw json elements, so that the numbers and
+     * strings are written out to the clients in exactly the same format as they were originally published.
+     */
+    private static class State<V> {
+
+        private Set<Instrument> instruments;
+
+        private Map<String, V> account;
+
+        private Map<String, Map<String, V>> ticks;
+
+        private Map<String, Map<String, V>> bars;
+
+    }
+
+}
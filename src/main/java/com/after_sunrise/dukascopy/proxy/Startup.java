@@ -0,0 +1,76 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the elapsed time since the JVM start, until the application is ready and until the first tick is published,
+ * which together make up the restart-to-first-tick time.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Startup implements Listener, ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final long origin;
+
+    private final AtomicBoolean ticked = new AtomicBoolean();
+
+    private final Gauge elapsed;
+
+    @Autowired
+    public Startup(Clock clock, CollectorRegistry registry) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        Objects.requireNonNull(registry, "CollectorRegistry is required.");
+
+        this.origin = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        this.elapsed = Gauge.build().name("dukas_proxy_startup_seconds")
+                .help("Elapsed time since the JVM start until each of the startup phases.")
+                .labelNames("phase").register(registry);
+
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        record("ready");
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+        if (ticked.compareAndSet(false, true)) {
+            record("tick");
+        }
+    }
+
+    private void record(String phase) {
+
+        long millis = clock.millis() - origin;
+
+        elapsed.labels(phase).set(millis / 1e3);
+
+        logger.info("Startup phase : {} = {} ms", phase, millis);
+
+    }
+
+}
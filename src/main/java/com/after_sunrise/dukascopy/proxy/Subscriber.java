@@ -6,6 +6,7 @@ import com.dukascopy.api.IConnectionStatusMessage;
 import com.dukascopy.api.IContext;
 import com.dukascopy.api.IInstrumentStatusMessage;
 import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
 import com.dukascopy.api.IStrategy;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
@@ -19,47 +20,102 @@ import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-
+import java.util.function.Supplier;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_JNLP;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CREDENTIAL_USER;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_HISTORY_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_LIFECYCLE_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_MESSAGE_SKIP;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_POLL_WAIT;
 import static com.after_sunrise.dukascopy.proxy.Config.CK_SEPARATOR;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SHARD_COUNT;
 import static com.after_sunrise.dukascopy.proxy.Config.CK_SUBSCRIPTION_INSTRUMENT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SUBSCRIPTION_WINDOW;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_JNLP;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CREDENTIAL_USER;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_HISTORY_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_LIFECYCLE_WAIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_MESSAGE_SKIP;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_POLL_WAIT;
 import static com.after_sunrise.dukascopy.proxy.Config.CV_SEPARATOR;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SHARD_COUNT;
 import static com.after_sunrise.dukascopy.proxy.Config.CV_SUBSCRIPTION_INSTRUMENT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SUBSCRIPTION_WINDOW;
 import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_SUBSCRIPTION;
 import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_SUBSCRIPTION_CREATE;
 import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_SUBSCRIPTION_DELETE;
+import static com.after_sunrise.dukascopy.proxy.Config.GSON;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_ASK;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_BID;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_INSTRUMENT;
 import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_ACCOUNT;
 import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_BAR;
 import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_MESSAGE;
 import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_SUBSCRIPTION;
 import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_TICK;
+import static com.after_sunrise.dukascopy.proxy.Config.getShardKey;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static java.util.Objects.requireNonNullElseGet;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.joining;
 import static org.apache.commons.lang3.ArrayUtils.EMPTY_STRING_ARRAY;
 
@@ -68,7 +124,7 @@ import static org.apache.commons.lang3.ArrayUtils.EMPTY_STRING_ARRAY;
  * @version 0.0.0
  */
 @RestController
-public class Subscriber implements IStrategy {
+public class Subscriber implements IStrategy, DisposableBean {
 
     private final Logger LOGGER = LoggerFactory.getLogger(Subscription.class);
 
@@ -80,10 +136,42 @@ public class Subscriber implements IStrategy {
 
     private final SimpMessageSendingOperations template;
 
-    private final AtomicReference<IContext> reference = new AtomicReference<>();
+    private final MessageConverter converter = new Converter(GSON);
+
+    private final Snapshot snapshot;
+
+    private final Backfill backfill;
+
+    private final Failover failover;
+
+    private final Poller poller;
+
+    private final Recent recent;
+
+    private final List<Listener> listeners;
+
+    private final Set<IMessage.Type> skips;
+
+    private final int shards;
+
+    private final AtomicReferenceArray<IContext> contexts;
+
+    private final AtomicReference<Set<Instrument>> instruments = new AtomicReference<>();
+
+    private final Queue<Modification> modifications = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor;
+
+    private final History history;
+
+    private final ConcurrentMap<String, CompletableFuture<Map<String, Object>>> lookups = new ConcurrentHashMap<>();
 
     @Autowired
-    public Subscriber(Clock clock, Configuration configuration, SimpMessageSendingOperations template) {
+    public Subscriber(Clock clock, Configuration configuration, SimpMessageSendingOperations template,
+                      Snapshot snapshot, Backfill backfill, Failover failover, Poller poller, Recent recent,
+                      History history, List<Listener> listeners) {
 
         this.clock = Objects.requireNonNull(clock, "Clock is required.");
 
@@ -91,35 +179,177 @@ public class Subscriber implements IStrategy {
 
         this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
 
+        this.snapshot = Objects.requireNonNull(snapshot, "Snapshot is required.");
+
+        this.backfill = Objects.requireNonNull(backfill, "Backfill is required.");
+
+        this.failover = Objects.requireNonNull(failover, "Failover is required.");
+
+        this.poller = Objects.requireNonNull(poller, "Poller is required.");
+
+        this.recent = Objects.requireNonNull(recent, "Recent is required.");
+
+        this.history = Objects.requireNonNull(history, "History is required.");
+
+        this.listeners = List.copyOf(Objects.requireNonNull(listeners, "Listeners are required."));
+
+        this.skips = loadSkips();
+
+        this.shards = Math.max(configuration.getInt(CK_SHARD_COUNT, CV_SHARD_COUNT), 1);
+
+        this.contexts = new AtomicReferenceArray<>(failover.isEnabled() ? shards + 1 : shards);
+
+        this.instruments.set(requireNonNullElseGet(snapshot.getInstruments(), this::loadInstruments));
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, false);
+
     }
 
     @Override
     public void onStart(IContext context) {
+        startContext(0, context);
+    }
 
-        reference.set(context);
+    @Override
+    public void onStop() {
+        stopContext(0);
+    }
 
-        LOGGER.trace("BGN");
+    /**
+     * Creates the strategy for the additional connection, which subscribes to its own partition of the instruments,
+     * and feeds its callbacks into this instance. The first (index = 0) partition is subscribed by this instance.
+     * The index next to the last shard is the standby, which subscribes to all of the instruments.
+     */
+    public IStrategy createShard(int index) {
+        return new Shard(this, index, isSeparateAccount(index));
+    }
 
-        logger.info("Context started : server time = {}", Instant.ofEpochMilli(context.getTime()));
+    /**
+     * @return {@code true} if the connection logs in with its own account, instead of the one of the primary.
+     */
+    @VisibleForTesting
+    boolean isSeparateAccount(int index) {
+
+        String jnlp = configuration.getString(CK_CREDENTIAL_JNLP, CV_CREDENTIAL_JNLP);
+
+        String user = configuration.getString(CK_CREDENTIAL_USER, CV_CREDENTIAL_USER);
+
+        return !Objects.equals(jnlp, configuration.getString(getShardKey(index, CK_CREDENTIAL_JNLP), jnlp))
+                || !Objects.equals(user, configuration.getString(getShardKey(index, CK_CREDENTIAL_USER), user));
+
+    }
 
-        Subscription subscription = adjustSubscription(null, persistInstruments(null, null));
+    @VisibleForTesting
+    int getShardCount() {
+        return shards;
+    }
+
+    @VisibleForTesting
+    boolean isStandby(int index) {
+        return index >= shards;
+    }
+
+    @VisibleForTesting
+    int getShard(Instrument instrument) {
+        return instrument.ordinal() % shards;
+    }
+
+    @VisibleForTesting
+    Set<Instrument> getPartition(Set<Instrument> instruments, int index) {
+
+        Set<Instrument> partition = EnumSet.noneOf(Instrument.class);
+
+        if (isStandby(index)) {
+
+            partition.addAll(instruments);
+
+            return partition;
+
+        }
+
+        instruments.stream().filter(i -> getShard(i) == index).forEach(partition::add);
+
+        return partition;
+
+    }
+
+    /**
+     * Retrieves any of the started contexts, for the non-instrument specific operations such as history queries.
+     */
+    @VisibleForTesting
+    IContext getContext() {
+
+        for (int i = 0; i < contexts.length(); i++) {
+
+            IContext context = contexts.get(i);
+
+            if (context != null) {
+                return context;
+            }
+
+        }
+
+        return null;
+
+    }
+
+    void startContext(int index, IContext context) {
+
+        contexts.set(index, context);
+
+        LOGGER.trace("BGN|{}", index);
+
+        logger.info("Context started : [{}] server time = {}", index, Instant.ofEpochMilli(context.getTime()));
+
+        Subscription subscription = adjustSubscription(null, instruments.get());
 
         template.convertAndSend(TOPIC_SUBSCRIPTION, subscription);
 
+        Set<Instrument> partition = getPartition(instruments.get(), index);
+
+        if (isStandby(index)) {
+            // Filled by the shards if connected, instead of holding their live ticks until the standby has filled.
+            partition.removeIf(i -> contexts.get(getShard(i)) != null);
+        }
+
+        backfill.start(context, partition, this::publishTick);
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onStart(index, context);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failure : {} - [{}]", listener, index, e);
+            }
+        }
+
     }
 
-    @Override
-    public void onStop() {
+    void stopContext(int index) {
 
-        IContext context = reference.getAndSet(null);
+        IContext context = contexts.getAndSet(index, null);
 
         if (context == null) {
             return;
         }
 
-        LOGGER.trace("END");
+        LOGGER.trace("END|{}", index);
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onStop(index);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failure : {} - [{}]", listener, index, e);
+            }
+        }
 
-        logger.info("Context stopped : server time = {}", Instant.ofEpochMilli(context.getTime()));
+        logger.info("Context stopped : [{}] server time = {}", index, Instant.ofEpochMilli(context.getTime()));
 
     }
 
@@ -137,7 +367,7 @@ public class Subscriber implements IStrategy {
         map.put("xi", UUID.randomUUID().toString());
         map.put("xe", clock.millis());
 
-        consumeIfPresent(reference.get(), v -> {
+        consumeIfPresent(getContext(), v -> {
             map.put("xt", v.getTime());
             map.put("xs", v.isStopped());
         });
@@ -146,9 +376,46 @@ public class Subscriber implements IStrategy {
 
     }
 
+    @VisibleForTesting
+    Set<IMessage.Type> loadSkips() {
+
+        Set<IMessage.Type> results = EnumSet.noneOf(IMessage.Type.class);
+
+        String separator = configuration.getString(CK_SEPARATOR, CV_SEPARATOR);
+
+        String value = configuration.getString(CK_MESSAGE_SKIP, CV_MESSAGE_SKIP);
+
+        for (String name : Objects.requireNonNullElse(StringUtils.split(value, separator), EMPTY_STRING_ARRAY)) {
+            results.add(IMessage.Type.valueOf(name.trim()));
+        }
+
+        logger.debug("Skipped messages : {} = {}", CK_MESSAGE_SKIP, results);
+
+        return Collections.unmodifiableSet(results);
+
+    }
+
+    /**
+     * Publishes the message to the aggregate destination, as well as to the destinations of its type
+     * ({@code /topic/message/{type}}) and of its instrument ({@code /topic/message/instrument/{instrument}}) if any.
+     * Messages of the types configured in {@link Config#CK_MESSAGE_SKIP} are dropped without being converted.
+     * The payload is serialized once, and is shared among the destinations.
+     */
     @Override
     public void onMessage(IMessage message) {
 
+        for (Listener listener : listeners) {
+            try {
+                listener.onMessage(message);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failure : {} - {}", listener, message, e);
+            }
+        }
+
+        if (message != null && skips.contains(message.getType())) {
+            return;
+        }
+
         Map<String, Object> map = createMap();
 
         consumeIfPresent(message, v -> {
@@ -163,15 +430,34 @@ public class Subscriber implements IStrategy {
             map.put("cc", m.isConnected());
         }
 
+        Instrument instrument = null;
+
         if (message instanceof IInstrumentStatusMessage) {
             IInstrumentStatusMessage m = (IInstrumentStatusMessage) message;
-            map.put("in", m.getInstrument().name());
+            instrument = m.getInstrument();
+            map.put("in", instrument.name());
             map.put("it", m.isTradable());
+        } else if (message != null && message.getOrder() != null) {
+            IOrder o = message.getOrder();
+            instrument = o.getInstrument();
+            map.put("in", instrument.name());
+            map.put("oi", o.getId());
+            map.put("ol", o.getLabel());
         }
 
         LOGGER.trace("MSG|{}", map);
 
-        template.convertAndSend(TOPIC_MESSAGE, map);
+        Message<?> converted = converter.toMessage(map, null); // Converted once, and copied per destination.
+
+        template.send(TOPIC_MESSAGE, converted);
+
+        if (message != null && message.getType() != null) {
+            template.send(TOPIC_MESSAGE + "/" + message.getType().name(), converted);
+        }
+
+        if (instrument != null) {
+            template.send(TOPIC_MESSAGE + "/instrument/" + instrument.name(), converted);
+        }
 
     }
 
@@ -182,6 +468,8 @@ public class Subscriber implements IStrategy {
 
         LOGGER.trace("ACC|{}", map);
 
+        snapshot.setAccount(map);
+
         template.convertAndSend(TOPIC_ACCOUNT, map);
 
     }
@@ -190,10 +478,10 @@ public class Subscriber implements IStrategy {
     @ResponseBody
     public Map<String, Object> getAccount() {
 
-        IContext context = reference.get();
+        IContext context = getContext();
 
         if (context == null) {
-            return null;
+            return snapshot.getAccount();
         }
 
         return convertAccount(context.getAccount());
@@ -219,27 +507,109 @@ public class Subscriber implements IStrategy {
 
     @Override
     public void onTick(Instrument instrument, ITick tick) {
+        receiveTick(0, instrument, tick);
+    }
+
+    void receiveTick(int index, Instrument instrument, ITick tick) {
+
+        if (!failover.acceptTick(isStandby(index), instrument, tick)) {
+            return; // Already published from the other feed.
+        }
+
+        if (backfill.offer(instrument, tick)) {
+            return; // Released after the backfill.
+        }
+
+        publishTick(instrument, tick, false);
+
+    }
+
+    @VisibleForTesting
+    void publishTick(Instrument instrument, ITick tick, boolean replay) {
 
         Map<String, Object> map = convertTick(instrument, tick);
 
+        if (replay) {
+            map.put("xr", TRUE);
+        }
+
+        long sequence = recent.append(instrument, tick);
+
+        if (sequence > 0) {
+            map.put("xq", sequence);
+        }
+
         LOGGER.trace("TCK|{}", map);
 
-        template.convertAndSend(TOPIC_TICK, map);
+        snapshot.setTick(instrument, map);
+
+        backfill.record(instrument, tick);
+
+        template.convertAndSend(TOPIC_TICK, map, createHeaders(instrument, tick));
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onTick(instrument, tick);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failure : {} - {}", listener, instrument, e);
+            }
+        }
+
+    }
+
+    /**
+     * Tags the message with the instrument and the prices, for the {@link Selector} and the {@link Throttle}.
+     */
+    @VisibleForTesting
+    MessageHeaders createHeaders(Instrument instrument, ITick tick) {
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+
+        accessor.setHeader(HEADER_INSTRUMENT, instrument.ordinal());
+
+        if (tick != null) {
+            accessor.setHeader(HEADER_ASK, tick.getAsk());
+            accessor.setHeader(HEADER_BID, tick.getBid());
+        }
+
+        accessor.setLeaveMutable(true); // Reused by the template, instead of being copied.
+
+        return accessor.getMessageHeaders();
 
     }
 
+    /**
+     * Retrieves the tick, tagged with the sequence of the published ticks for the conditional and long-poll requests.
+     *
+     * @see #poll(String, String, Long, Callable, Supplier)
+     */
     @GetMapping(path = TOPIC_TICK + "/{instrument}")
     @ResponseBody
-    public Map<String, Object> getTick(@PathVariable Instrument instrument) throws JFException {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getTick(
+            @PathVariable Instrument instrument,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String tag,
+            @RequestParam(name = "wait", required = false) Long wait) {
+
+        if (instrument == null) {
+            return poll(null, tag, wait, () -> null, () -> null);
+        }
+
+        return poll(poller.getTickKey(instrument), tag, wait,
+                () -> queryTick(instrument), () -> snapshot.getTick(instrument));
+
+    }
+
+    @VisibleForTesting
+    Map<String, Object> queryTick(Instrument instrument) throws JFException {
 
         if (instrument == null) {
             return null;
         }
 
-        IContext context = reference.get();
+        IContext context = getContext();
 
         if (context == null) {
-            return null;
+            return snapshot.getTick(instrument);
         }
 
         return convertTick(instrument, context.getHistory().getLastTick(instrument));
@@ -272,27 +642,65 @@ public class Subscriber implements IStrategy {
 
     @Override
     public void onBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+        receiveBar(0, instrument, period, askBar, bidBar);
+    }
+
+    void receiveBar(int index, Instrument instrument, Period period, IBar askBar, IBar bidBar) {
+
+        if (!failover.acceptBar(instrument, period, askBar, bidBar)) {
+            return; // Already published from the other feed.
+        }
 
         Map<String, Object> map = convertBar(instrument, period, askBar, bidBar);
 
         LOGGER.trace("BAR|{}", map);
 
-        template.convertAndSend(TOPIC_BAR, map);
+        snapshot.setBar(instrument, period, map);
+
+        template.convertAndSend(TOPIC_BAR, map, createHeaders(instrument, null));
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onBar(instrument, period, askBar, bidBar);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failure : {} - {}", listener, instrument, e);
+            }
+        }
 
     }
 
+    /**
+     * Retrieves the bar, tagged with the sequence of the published bars for the conditional and long-poll requests.
+     *
+     * @see #poll(String, String, Long, Callable, Supplier)
+     */
     @GetMapping(path = TOPIC_BAR + "/{instrument}/{period}")
     @ResponseBody
-    public Map<String, Object> getBar(@PathVariable Instrument instrument, @PathVariable Period period) throws JFException {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getBar(
+            @PathVariable Instrument instrument, @PathVariable Period period,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String tag,
+            @RequestParam(name = "wait", required = false) Long wait) {
+
+        if (instrument == null || period == null) {
+            return poll(null, tag, wait, () -> null, () -> null);
+        }
+
+        // Not from the snapshot of the last completed bar, for replying the in-progress bar same as the query.
+        return poll(poller.getBarKey(instrument, period), tag, wait, () -> queryBar(instrument, period), null);
+
+    }
+
+    @VisibleForTesting
+    Map<String, Object> queryBar(Instrument instrument, Period period) throws JFException {
 
         if (instrument == null || period == null) {
             return null;
         }
 
-        IContext context = reference.get();
+        IContext context = getContext();
 
         if (context == null) {
-            return null;
+            return snapshot.getBar(instrument, period);
         }
 
         IBar askBar = context.getHistory().getBar(instrument, period, OfferSide.ASK, 0);
@@ -303,6 +711,303 @@ public class Subscriber implements IStrategy {
 
     }
 
+    /**
+     * Retrieves the ticks of multiple instruments at once. Values of the subscribed instruments are read from the
+     * snapshot of the last published ticks, and the others are queried from the history in parallel.
+     */
+    @GetMapping(path = TOPIC_TICK, params = "instruments")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<Map<String, Map<String, Object>>>> getTicks(
+            @RequestParam("instruments") List<Instrument> instruments) {
+
+        Set<Instrument> subscribed = this.instruments.get();
+
+        Map<String, CompletableFuture<Map<String, Object>>> futures = new LinkedHashMap<>();
+
+        for (Instrument instrument : instruments) {
+
+            if (instrument == null || futures.containsKey(instrument.name())) {
+                continue;
+            }
+
+            Map<String, Object> cached = subscribed.contains(instrument) ? snapshot.getTick(instrument) : null;
+
+            futures.put(instrument.name(), cached != null ? CompletableFuture.completedFuture(cached) :
+                    lookup(poller.getTickKey(instrument), () -> queryTick(instrument)));
+
+        }
+
+        if (futures.values().stream().anyMatch(this::isRejected)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+
+        return collect(futures).thenApply(ResponseEntity::ok);
+
+    }
+
+    /**
+     * Retrieves the bars of multiple instruments and periods at once, queried from the history in parallel.
+     * Bars are the current (in-progress) ones same as {@link #getBar}, hence not read from the snapshot of the
+     * published (completed) bars even if subscribed.
+     */
+    @GetMapping(path = TOPIC_BAR, params = {"instruments", "periods"})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<Map<String, Map<String, Map<String, Object>>>>> getBars(
+            @RequestParam("instruments") List<Instrument> instruments, @RequestParam("periods") List<Period> periods) {
+
+        Map<String, CompletableFuture<Map<String, Object>>> futures = new LinkedHashMap<>(); // "{instrument}/{period}"
+
+        for (Instrument instrument : instruments) {
+
+            if (instrument == null) {
+                continue;
+            }
+
+            for (Period period : periods) {
+
+                if (period == null || futures.containsKey(instrument.name() + "/" + period.name())) {
+                    continue;
+                }
+
+                futures.put(instrument.name() + "/" + period.name(),
+                        lookup(poller.getBarKey(instrument, period), () -> queryBar(instrument, period)));
+
+            }
+
+        }
+
+        if (futures.values().stream().anyMatch(this::isRejected)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+
+        return collect(futures).thenApply(values -> {
+
+            Map<String, Map<String, Map<String, Object>>> results = new LinkedHashMap<>();
+
+            values.forEach((k, v) -> results.computeIfAbsent(StringUtils.substringBefore(k, "/"),
+                    i -> new LinkedHashMap<>()).put(StringUtils.substringAfter(k, "/"), v));
+
+            return ResponseEntity.ok(results);
+
+        });
+
+    }
+
+    /**
+     * Replies the queried value tagged with the current sequence of the key, or "304 Not Modified" if the requested
+     * tag is still current. With the waiting period, the not-modified reply is deferred until the next update of the
+     * key or the timeout, without occupying the request thread, and the latest published value is replied on update
+     * (or queried again if not supplied).
+     *
+     * @param latest Latest published value, or {@code null} to query again on update.
+     */
+    @VisibleForTesting
+    DeferredResult<ResponseEntity<Map<String, Object>>> poll(String key, String tag, Long wait,
+                                                             Callable<Map<String, Object>> query,
+                                                             Supplier<Map<String, Object>> latest) {
+
+        long limit = configuration.getLong(CK_POLL_WAIT, CV_POLL_WAIT.toMillis());
+
+        long millis = Math.min(Objects.requireNonNullElse(wait, 0L), limit);
+
+        long sequence = key == null ? 0 : poller.getSequence(key);
+
+        String current = poller.getTag(sequence);
+
+        if (current == null || !current.equals(tag)) {
+            return query(key, current, query);
+        }
+
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(millis > 0 ? millis : null);
+
+        ResponseEntity<Map<String, Object>> unmodified =
+                ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+
+        if (millis <= 0) {
+
+            result.setResult(unmodified);
+
+            return result;
+
+        }
+
+        Runnable callback = latest != null
+                ? () -> result.setResult(reply(poller.getTag(poller.getSequence(key)), latest.get()))
+                : () -> complete(result, key, poller.getTag(poller.getSequence(key)), query);
+
+        result.onTimeout(() -> result.setResult(unmodified));
+
+        result.onCompletion(() -> poller.cancel(key, callback));
+
+        poller.await(key, sequence, callback);
+
+        return result;
+
+    }
+
+    /**
+     * Queries on the history executor, replying "503 Service Unavailable" immediately if the executor is saturated,
+     * and "504 Gateway Timeout" if the query does not complete within the {@link Config#CK_HISTORY_TIMEOUT}.
+     */
+    @VisibleForTesting
+    DeferredResult<ResponseEntity<Map<String, Object>>> query(String key, String tag,
+                                                              Callable<Map<String, Object>> query) {
+
+        long millis = configuration.getLong(CK_HISTORY_TIMEOUT, CV_HISTORY_TIMEOUT.toMillis());
+
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(millis);
+
+        if (key == null) {
+
+            result.setResult(reply(tag, null));
+
+            return result;
+
+        }
+
+        result.onTimeout(() -> result.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build()));
+
+        complete(result, key, tag, query);
+
+        return result;
+
+    }
+
+    private void complete(DeferredResult<ResponseEntity<Map<String, Object>>> result,
+                          String key, String tag, Callable<Map<String, Object>> query) {
+
+        CompletableFuture<Map<String, Object>> future = lookup(key, query);
+
+        if (isRejected(future)) {
+
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+
+            return;
+
+        }
+
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.setResult(reply(tag, value));
+            } else {
+                result.setErrorResult(e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+
+    }
+
+    private ResponseEntity<Map<String, Object>> reply(String tag, Map<String, Object> body) {
+
+        if (tag == null) {
+            return ResponseEntity.ok().body(body);
+        }
+
+        return ResponseEntity.ok().eTag(tag).body(body);
+
+    }
+
+    /**
+     * Queries the history asynchronously, sharing the single query among the concurrent requests of the same key.
+     */
+    @VisibleForTesting
+    CompletableFuture<Map<String, Object>> lookup(String key, Callable<Map<String, Object>> callable) {
+
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+
+        CompletableFuture<Map<String, Object>> existing = lookups.putIfAbsent(key, future);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+
+            history.execute(() -> {
+
+                try {
+                    future.complete(callable.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    lookups.remove(key, future);
+                }
+
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            lookups.remove(key, future);
+
+            future.completeExceptionally(e);
+
+        }
+
+        return future;
+
+    }
+
+    /**
+     * @return {@code true} if the lookup has been rejected by the saturated history executor.
+     */
+    @VisibleForTesting
+    boolean isRejected(CompletableFuture<?> future) {
+
+        if (!future.isCompletedExceptionally()) {
+            return false;
+        }
+
+        try {
+
+            future.join();
+
+            return false;
+
+        } catch (CompletionException e) {
+
+            return e.getCause() instanceof RejectedExecutionException;
+
+        } catch (CancellationException e) {
+
+            return false;
+
+        }
+
+    }
+
+    /**
+     * Collects the results of the lookups without blocking, omitting the ones failed or not completed within the
+     * {@link Config#CK_HISTORY_TIMEOUT}.
+     */
+    @VisibleForTesting
+    CompletableFuture<Map<String, Map<String, Object>>> collect(
+            Map<String, CompletableFuture<Map<String, Object>>> futures) {
+
+        long millis = configuration.getLong(CK_HISTORY_TIMEOUT, CV_HISTORY_TIMEOUT.toMillis());
+
+        Map<String, CompletableFuture<Map<String, Object>>> settled = new LinkedHashMap<>();
+
+        futures.forEach((k, v) -> settled.put(k, v.handle((value, e) -> {
+
+            if (e != null) {
+                logger.warn("Failed lookup : {}", k, e);
+            }
+
+            return value;
+
+        }).completeOnTimeout(null, millis, MILLISECONDS)));
+
+        return CompletableFuture.allOf(settled.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+
+            Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+
+            settled.forEach((k, f) -> consumeIfPresent(f.join(), value -> results.put(k, value)));
+
+            return results;
+
+        });
+
+    }
+
     @VisibleForTesting
     Map<String, Object> convertBar(Instrument instrument, Period period, IBar askBar, IBar bidBar) {
 
@@ -347,9 +1052,7 @@ public class Subscriber implements IStrategy {
 
         logger.info("Fetching subscription.");
 
-        Set<Instrument> instruments = persistInstruments(null, null);
-
-        return ImmutableSubscription.builder().epoch(clock.instant()).instruments(instruments).build();
+        return ImmutableSubscription.builder().epoch(clock.instant()).instruments(instruments.get()).build();
 
     }
 
@@ -361,11 +1064,7 @@ public class Subscriber implements IStrategy {
 
         logger.info("Adding subscription : {}", message);
 
-        Subscription subscription = requireNonNullElseGet(message, ImmutableSubscription::of);
-
-        Set<Instrument> instruments = persistInstruments(subscription.getInstruments(), Collection::add);
-
-        return adjustSubscription(subscription.getId(), instruments);
+        return modifySubscription(message, Collection::add);
 
     }
 
@@ -377,24 +1076,17 @@ public class Subscriber implements IStrategy {
 
         logger.info("Removing subscription : {}", message);
 
-        Subscription subscription = requireNonNullElseGet(message, ImmutableSubscription::of);
-
-        Set<Instrument> instruments = persistInstruments(subscription.getInstruments(), Collection::remove);
-
-        return adjustSubscription(subscription.getId(), instruments);
+        return modifySubscription(message, Collection::remove);
 
     }
 
     @VisibleForTesting
-    Set<Instrument> persistInstruments(Set<Instrument> instruments, BiConsumer<Set<Instrument>, Instrument> handler) {
+    Set<Instrument> loadInstruments() {
 
-        Set<Instrument> results = new HashSet<>();
+        Set<Instrument> results = EnumSet.noneOf(Instrument.class);
 
         String separator = configuration.getString(CK_SEPARATOR, CV_SEPARATOR);
 
-        //
-        // Load
-        //
         String asIs = configuration.getString(CK_SUBSCRIPTION_INSTRUMENT, CV_SUBSCRIPTION_INSTRUMENT);
 
         logger.debug("Loaded instruments : {} = {}", CK_SUBSCRIPTION_INSTRUMENT, asIs);
@@ -407,72 +1099,191 @@ public class Subscriber implements IStrategy {
 
         }
 
-        if (CollectionUtils.isNotEmpty(instruments)) {
+        return Collections.unmodifiableSet(results);
+
+    }
+
+    /**
+     * Queues the modification, and waits for the batch which includes it to be adjusted upstream.
+     * Modifications arriving within the {@link Config#CK_SUBSCRIPTION_WINDOW} are coalesced into a single adjustment.
+     */
+    @VisibleForTesting
+    Subscription modifySubscription(Subscription message, BiConsumer<Set<Instrument>, Instrument> handler) {
+
+        Subscription subscription = requireNonNullElseGet(message, ImmutableSubscription::of);
+
+        CompletableFuture<Subscription> future = new CompletableFuture<>();
+
+        modifications.add(new Modification(subscription.getInstruments(), handler, future));
+
+        if (scheduled.compareAndSet(false, true)) {
+
+            long millis = configuration.getLong(CK_SUBSCRIPTION_WINDOW, CV_SUBSCRIPTION_WINDOW.toMillis());
+
+            executor.schedule(this::flushSubscription, millis, MILLISECONDS);
+
+        }
+
+        long millis = configuration.getLong(CK_LIFECYCLE_WAIT, CV_LIFECYCLE_WAIT.toMillis());
+
+        try {
+
+            return ImmutableSubscription.copyOf(future.get(millis, MILLISECONDS)).withId(subscription.getId());
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            logger.warn("Interrupted subscription : {}", subscription);
+
+        } catch (ExecutionException | TimeoutException e) {
+
+            logger.warn("Failed subscription : {}", subscription, e);
+
+        }
+
+        return ImmutableSubscription.builder()
+                .id(subscription.getId()).epoch(clock.instant()).success(FALSE).instruments(instruments.get()).build();
+
+    }
+
+    @VisibleForTesting
+    void flushSubscription() {
+
+        scheduled.set(false); // Subsequent modifications will schedule another flush.
+
+        List<Modification> batch = new ArrayList<>();
+
+        for (Modification m = modifications.poll(); m != null; m = modifications.poll()) {
+            batch.add(m);
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
 
             //
             // Aggregate (Add or Remove)
             //
-            instruments.forEach(i -> consumeIfPresent(i, instrument -> handler.accept(results, instrument)));
+            Set<Instrument> results = EnumSet.noneOf(Instrument.class);
+
+            results.addAll(instruments.get());
+
+            batch.forEach(m -> m.apply(results));
+
+            instruments.set(Collections.unmodifiableSet(results));
+
+            snapshot.setInstruments(instruments.get());
 
             //
             // Persist
             //
-            String toBe = StringUtils.defaultString(results.stream()
-                    .map(Instrument::name).filter(StringUtils::isNotBlank).sorted().collect(joining(separator)));
+            String separator = configuration.getString(CK_SEPARATOR, CV_SEPARATOR);
+
+            String toBe = results.stream().map(Instrument::name).sorted().collect(joining(separator));
 
             configuration.setProperty(CK_SUBSCRIPTION_INSTRUMENT, toBe);
 
-            logger.debug("Saved instruments : {} = {}", CK_SUBSCRIPTION_INSTRUMENT, toBe);
+            logger.debug("Saved instruments : {} = {} ({} requests)", CK_SUBSCRIPTION_INSTRUMENT, toBe, batch.size());
+
+            //
+            // Adjust once for the whole batch.
+            //
+            Subscription subscription = adjustSubscription(null, instruments.get());
+
+            batch.forEach(m -> m.future.complete(subscription));
+
+        } catch (RuntimeException e) {
 
+            batch.forEach(m -> m.future.completeExceptionally(e));
+
+        }
+
+    }
+
+    private static class Modification {
+
+        private final Set<Instrument> instruments;
+
+        private final BiConsumer<Set<Instrument>, Instrument> handler;
+
+        private final CompletableFuture<Subscription> future;
+
+        private Modification(Set<Instrument> instruments,
+                             BiConsumer<Set<Instrument>, Instrument> handler,
+                             CompletableFuture<Subscription> future) {
+            this.instruments = instruments;
+            this.handler = handler;
+            this.future = future;
         }
 
-        return results;
+        private void apply(Set<Instrument> results) {
+            if (instruments != null) {
+                instruments.stream().filter(Objects::nonNull).forEach(i -> handler.accept(results, i));
+            }
+        }
 
     }
 
+    /**
+     * Adjusts the subscription of each of the started contexts, for the instruments in its own partition.
+     * The result is not successful if any of the contexts are not yet started, in which case the partition will be
+     * adjusted later on its start.
+     */
     @VisibleForTesting
-    Subscription adjustSubscription(String id, Set<Instrument> instruments) {
+    synchronized Subscription adjustSubscription(String id, Set<Instrument> instruments) {
+
+        boolean success = true;
 
-        Subscription subscription;
+        for (int i = 0; i < contexts.length(); i++) {
 
-        IContext context = reference.get();
+            IContext context = contexts.get(i);
 
-        if (context != null) {
+            if (context == null) {
+
+                success = false;
+
+                continue;
+
+            }
+
+            int shard = i;
+
+            Set<Instrument> partition = getPartition(instruments, shard);
 
             Set<Instrument> current = context.getSubscribedInstruments();
 
-            Set<Instrument> excessive = Sets.difference(current, instruments);
+            Set<Instrument> excessive = Sets.difference(current, partition);
 
             if (CollectionUtils.isNotEmpty(excessive)) {
 
-                excessive.forEach(i -> logger.debug("Unsubscribing : {} - {}", id, i));
+                excessive.forEach(instrument -> logger.debug("Unsubscribing : {} - {} [{}]", id, instrument, shard));
 
                 context.unsubscribeInstruments(new HashSet<>(excessive));
 
             }
 
-            Set<Instrument> lacking = Sets.difference(instruments, current);
+            Set<Instrument> lacking = Sets.difference(partition, current);
 
             if (CollectionUtils.isNotEmpty(lacking)) {
 
-                lacking.forEach(i -> logger.debug("Subscribing : {} - {}", id, i));
+                lacking.forEach(instrument -> logger.debug("Subscribing : {} - {} [{}]", id, instrument, shard));
 
                 context.setSubscribedInstruments(new HashSet<>(lacking), false);
 
             }
 
-            subscription = ImmutableSubscription.builder()
-                    .id(id).epoch(clock.instant()).success(TRUE).instruments(instruments).build();
+        }
 
-            logger.debug("Adjusted subscription : {}", subscription);
+        Subscription subscription = ImmutableSubscription.builder()
+                .id(id).epoch(clock.instant()).success(success ? TRUE : FALSE).instruments(instruments).build();
 
+        if (success) {
+            logger.debug("Adjusted subscription : {}", subscription);
         } else {
-
-            subscription = ImmutableSubscription.builder()
-                    .id(id).epoch(clock.instant()).success(FALSE).instruments(instruments).build();
-
             logger.debug("Skipped subscription : {}", subscription);
-
         }
 
         return subscription;
@@ -0,0 +1,320 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SYNTHETIC;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_ASK;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_BID;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_SCALE;
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_SYNTHETIC;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_TICK;
+
+/**
+ * Computes the synthetic instruments from the ticks of its legs, and publishes them in the same format as the ticks.
+ * Each synthetic is configured as the product and/or the ratio of the instruments, which are required to be subscribed.
+ * (cf: "dukas-proxy.synthetic.GBPJPY_SYN=GBPUSD*USDJPY", "dukas-proxy.synthetic.CHFJPY_SYN=USDJPY/USDCHF")
+ * Names are required to be distinct from the actual instruments, so that the synthetic ticks are not mistaken for them.
+ * Prices are scaled as the actual instruments quoted in the same currency, and the volumes are zero without liquidity.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Synthetic implements Listener {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final SimpMessageSendingOperations template;
+
+    private final double[] asks = new double[Instrument.values().length];
+
+    private final double[] bids = new double[Instrument.values().length];
+
+    private final long[] times = new long[Instrument.values().length];
+
+    /**
+     * Synthetics depending on each of the instruments, indexed by the ordinal of the instrument.
+     */
+    private final Definition[][] dependents;
+
+    @Autowired
+    public Synthetic(Clock clock, Configuration configuration, SimpMessageSendingOperations template) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        List<Definition> definitions = new ArrayList<>();
+
+        for (Iterator<String> itr = configuration.getKeys(CK_SYNTHETIC); itr.hasNext(); ) {
+
+            String key = itr.next();
+
+            String name = key.substring(CK_SYNTHETIC.length() + 1);
+
+            String expression = configuration.getString(key);
+
+            Definition definition = parse(name, expression);
+
+            logger.info("Synthetic : {} = {}", name, expression);
+
+            definitions.add(definition);
+
+        }
+
+        this.dependents = new Definition[Instrument.values().length][];
+
+        for (Instrument instrument : Instrument.values()) {
+            dependents[instrument.ordinal()] = definitions.stream()
+                    .filter(d -> d.depends(instrument)).toArray(Definition[]::new);
+        }
+
+    }
+
+    @VisibleForTesting
+    static Definition parse(String name, String expression) {
+
+        for (Instrument instrument : Instrument.values()) {
+            if (instrument.name().equals(name) || instrument.toString().equals(name)) {
+                throw new IllegalArgumentException("Synthetic conflicts with the instrument : " + name);
+            }
+        }
+
+        List<Instrument> legs = new ArrayList<>();
+
+        List<Boolean> inverses = new ArrayList<>();
+
+        boolean inverse = false;
+
+        int start = 0;
+
+        String text = StringUtils.trimToEmpty(expression);
+
+        for (int i = 0; i <= text.length(); i++) {
+
+            if (i < text.length() && text.charAt(i) != '*' && text.charAt(i) != '/') {
+                continue;
+            }
+
+            legs.add(Instrument.valueOf(text.substring(start, i).trim()));
+
+            inverses.add(inverse);
+
+            if (i < text.length()) {
+                inverse = text.charAt(i) == '/';
+            }
+
+            start = i + 1;
+
+        }
+
+        int[] ordinals = legs.stream().mapToInt(Instrument::ordinal).toArray();
+
+        boolean[] flags = new boolean[inverses.size()];
+
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = inverses.get(i);
+        }
+
+        return new Definition(name, getScale(legs, inverses), ordinals, flags);
+
+    }
+
+    /**
+     * Derives the scale from the quote currency remaining after the legs are multiplied and divided,
+     * (e.g. "JPY" of "GBPUSD*USDJPY") or falls back to the maximum scale of the legs if not a currency pair.
+     */
+    @VisibleForTesting
+    static int getScale(List<Instrument> legs, List<Boolean> inverses) {
+
+        Map<String, Integer> exponents = new LinkedHashMap<>();
+
+        for (int i = 0; i < legs.size(); i++) {
+
+            int sign = inverses.get(i) ? -1 : +1;
+
+            exponents.merge(legs.get(i).getPrimaryJFCurrency().getCurrencyCode(), +sign, Integer::sum);
+
+            exponents.merge(legs.get(i).getSecondaryJFCurrency().getCurrencyCode(), -sign, Integer::sum);
+
+        }
+
+        List<String> bases = new ArrayList<>();
+
+        List<String> quotes = new ArrayList<>();
+
+        exponents.forEach((k, v) -> {
+            if (v == +1) {
+                bases.add(k);
+            } else if (v == -1) {
+                quotes.add(k);
+            }
+        });
+
+        OptionalInt scale = OptionalInt.empty();
+
+        if (bases.size() == 1 && quotes.size() == 1 && exponents.values().stream().allMatch(v -> Math.abs(v) <= 1)) {
+            scale = Stream.of(Instrument.values())
+                    .filter(i -> quotes.get(0).equals(i.getSecondaryJFCurrency().getCurrencyCode()))
+                    .mapToInt(Instrument::getTickScale).max();
+        }
+
+        return scale.orElseGet(() -> legs.stream().mapToInt(Instrument::getTickScale).max().orElse(0));
+
+    }
+
+    @Override
+    public void onTick(Instrument instrument, ITick tick) {
+
+        Definition[] definitions = dependents[instrument.ordinal()];
+
+        if (definitions.length == 0) {
+            return;
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(definitions.length);
+
+        synchronized (this) {
+
+            asks[instrument.ordinal()] = tick.getAsk();
+            bids[instrument.ordinal()] = tick.getBid();
+            times[instrument.ordinal()] = tick.getTime();
+
+            for (Definition definition : definitions) {
+
+                Map<String, Object> map = compute(definition);
+
+                if (map != null) {
+                    results.add(map);
+                }
+
+            }
+
+        }
+
+        results.forEach(map -> template.convertAndSend(TOPIC_TICK, map, createHeaders(map)));
+
+    }
+
+    /**
+     * Tags the message with the synthetic name and the prices, for the {@link Selector}.
+     */
+    @VisibleForTesting
+    static MessageHeaders createHeaders(Map<String, Object> map) {
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+
+        accessor.setHeader(HEADER_SYNTHETIC, map.get("in"));
+        accessor.setHeader(HEADER_SCALE, map.get("is"));
+        accessor.setHeader(HEADER_ASK, map.get("ap"));
+        accessor.setHeader(HEADER_BID, map.get("bp"));
+
+        accessor.setLeaveMutable(true); // Reused by the template, instead of being copied.
+
+        return accessor.getMessageHeaders();
+
+    }
+
+    @VisibleForTesting
+    Map<String, Object> compute(Definition definition) {
+
+        double ask = 1;
+
+        double bid = 1;
+
+        long time = 0;
+
+        for (int i = 0; i < definition.ordinals.length; i++) {
+
+            int ordinal = definition.ordinals[i];
+
+            if (asks[ordinal] <= 0 || bids[ordinal] <= 0) {
+                return null; // Not yet available.
+            }
+
+            if (definition.inverses[i]) {
+                ask /= bids[ordinal];
+                bid /= asks[ordinal];
+            } else {
+                ask *= asks[ordinal];
+                bid *= bids[ordinal];
+            }
+
+            time = Math.max(time, times[ordinal]);
+
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("xi", UUID.randomUUID().toString());
+        map.put("xe", clock.millis());
+        map.put("in", definition.name);
+        map.put("is", definition.scale);
+        map.put("tt", time);
+        map.put("ap", ask);
+        map.put("av", 0.0);
+        map.put("at", 0.0);
+        map.put("bp", bid);
+        map.put("bv", 0.0);
+        map.put("bt", 0.0);
+        return map;
+
+    }
+
+    @VisibleForTesting
+    static class Definition {
+
+        private final String name;
+
+        private final int scale;
+
+        private final int[] ordinals;
+
+        private final boolean[] inverses;
+
+        Definition(String name, int scale, int[] ordinals, boolean[] inverses) {
+            this.name = name;
+            this.scale = scale;
+            this.ordinals = ordinals;
+            this.inverses = inverses;
+        }
+
+        boolean depends(Instrument instrument) {
+
+            for (int ordinal : ordinals) {
+                if (ordinal == instrument.ordinal()) {
+                    return true;
+                }
+            }
+
+            return false;
+
+        }
+
+    }
+
+}
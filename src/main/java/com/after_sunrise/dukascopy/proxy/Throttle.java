@@ -0,0 +1,328 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.after_sunrise.dukascopy.proxy.Config.HEADER_INSTRUMENT;
+import static com.after_sunrise.dukascopy.proxy.Config.newScheduledExecutor;
+import static com.after_sunrise.dukascopy.proxy.Config.shutdown;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Limits the rate of the messages delivered per subscription, as requested in the STOMP SUBSCRIBE headers.
+ * <ul>
+ * <li>{@code min-interval} : Minimum interval between the messages in milliseconds.</li>
+ * <li>{@code max-rate} : Maximum number of the messages per second, if the interval is not specified.</li>
+ * <li>{@code rate-mode} : {@code sample} (default) delivers the latest message at each interval, and {@code bucket}
+ * delivers the messages as long as the tokens of the bucket (up to {@code rate-burst}) are available, dropping the rest.</li>
+ * </ul>
+ * The rate is limited per instrument of the subscription, or per subscription for the messages without the instrument
+ * (including all the messages relayed through the external broker). The state is kept in primitive arrays per
+ * subscription, so that the messages are filtered without allocation.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@Component
+public class Throttle implements ChannelInterceptor, DisposableBean {
+
+    static final String MIN_INTERVAL = "min-interval";
+
+    static final String MAX_RATE = "max-rate";
+
+    static final String RATE_MODE = "rate-mode";
+
+    static final String RATE_BURST = "rate-burst";
+
+    static final String MODE_BUCKET = "bucket";
+
+    private static final int SLOTS = Instrument.values().length + 1;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Configuration configuration;
+
+    /**
+     * Limits by the subscription id, by the session id.
+     */
+    private final Map<String, Map<String, Limit>> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public Throttle(Configuration configuration) {
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.executor = newScheduledExecutor(getClass());
+
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        shutdown(configuration, executor, true);
+
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+
+        MessageHeaders headers = message.getHeaders();
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+
+        String session = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (type == null || session == null) {
+            return message;
+        }
+
+        switch (type) {
+            case MESSAGE:
+                return accept(message, channel, session) ? message : null;
+            case SUBSCRIBE:
+                subscribe(message, session);
+                return message;
+            case UNSUBSCRIBE:
+                unsubscribe(headers, session);
+                return message;
+            case DISCONNECT:
+                sessions.remove(session);
+                return message;
+            default:
+                return message;
+        }
+
+    }
+
+    @VisibleForTesting
+    void subscribe(Message<?> message, String session) {
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+
+        String subscription = accessor.getSubscriptionId();
+
+        String interval = accessor.getFirstNativeHeader(MIN_INTERVAL);
+
+        String rate = accessor.getFirstNativeHeader(MAX_RATE);
+
+        if (subscription == null || (interval == null && rate == null)) {
+            return;
+        }
+
+        try {
+
+            long nanos = interval != null ? MILLISECONDS.toNanos(Long.parseLong(interval.trim()))
+                    : (long) (SECONDS.toNanos(1) / Double.parseDouble(rate.trim()));
+
+            boolean bucket = MODE_BUCKET.equalsIgnoreCase(accessor.getFirstNativeHeader(RATE_MODE));
+
+            String burst = accessor.getFirstNativeHeader(RATE_BURST);
+
+            double size = burst == null ? 1 : Math.max(Double.parseDouble(burst.trim()), 1);
+
+            if (nanos <= 0) {
+                return;
+            }
+
+            Limit limit = new Limit(nanos, bucket, size, System.nanoTime());
+
+            sessions.computeIfAbsent(session, k -> new ConcurrentHashMap<>()).put(subscription, limit);
+
+            logger.debug("Limiting subscription : {}/{} (interval={}ns, bucket={}, burst={})",
+                    session, subscription, nanos, bucket, size);
+
+        } catch (RuntimeException e) {
+
+            logger.warn("Ignoring invalid limit : {}/{} ({}={}, {}={})",
+                    session, subscription, MIN_INTERVAL, interval, MAX_RATE, rate, e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void unsubscribe(MessageHeaders headers, String session) {
+
+        Map<String, Limit> limits = sessions.get(session);
+
+        String subscription = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+
+        if (limits != null && subscription != null) {
+            limits.remove(subscription);
+        }
+
+    }
+
+    /**
+     * @return {@code true} to deliver the message immediately.
+     */
+    @VisibleForTesting
+    boolean accept(Message<?> message, MessageChannel channel, String session) {
+
+        Map<String, Limit> limits = sessions.get(session);
+
+        if (limits == null) {
+            return true;
+        }
+
+        String subscription = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+
+        Limit limit = subscription == null ? null : limits.get(subscription);
+
+        if (limit == null) {
+            return true;
+        }
+
+        Object ordinal = message.getHeaders().get(HEADER_INSTRUMENT);
+
+        int slot = ordinal instanceof Integer ? (Integer) ordinal : SLOTS - 1;
+
+        long delay = limit.accept(slot, System.nanoTime(), message);
+
+        if (delay > 0) {
+            executor.schedule(() -> release(limits, subscription, limit, slot, channel), delay, NANOSECONDS);
+        }
+
+        return delay == 0;
+
+    }
+
+    @VisibleForTesting
+    void release(Map<String, Limit> limits, String subscription, Limit limit, int slot, MessageChannel channel) {
+
+        if (limits.get(subscription) != limit) {
+            return; // Unsubscribed.
+        }
+
+        Message<?> message = limit.release(slot, System.nanoTime());
+
+        if (message != null) {
+            channel.send(message);
+        }
+
+    }
+
+    @VisibleForTesting
+    static class Limit {
+
+        private final long interval;
+
+        private final boolean bucket;
+
+        private final double burst;
+
+        /**
+         * Time of the last delivery (sample), or of the last refill (bucket).
+         */
+        private final long[] times = new long[SLOTS];
+
+        private final double[] tokens;
+
+        private final Message<?>[] pendings;
+
+        private final Message<?>[] releases;
+
+        Limit(long interval, boolean bucket, double burst, long now) {
+
+            this.interval = interval;
+            this.bucket = bucket;
+            this.burst = burst;
+            this.tokens = bucket ? new double[SLOTS] : null;
+            this.pendings = bucket ? null : new Message<?>[SLOTS];
+            this.releases = bucket ? null : new Message<?>[SLOTS];
+
+            Arrays.fill(times, now - interval);
+
+            if (tokens != null) {
+                Arrays.fill(tokens, burst);
+            }
+
+        }
+
+        /**
+         * @return Zero to deliver immediately, positive delay in nanoseconds to deliver later, or negative to drop.
+         */
+        synchronized long accept(int slot, long now, Message<?> message) {
+
+            if (bucket) {
+
+                tokens[slot] = Math.min(burst, tokens[slot] + (double) (now - times[slot]) / interval);
+
+                times[slot] = now;
+
+                if (tokens[slot] < 1) {
+                    return -1;
+                }
+
+                tokens[slot] -= 1;
+
+                return 0;
+
+            }
+
+            if (releases[slot] == message) {
+
+                releases[slot] = null;
+
+                return 0; // Released latest.
+
+            }
+
+            long elapsed = now - times[slot];
+
+            if (elapsed >= interval && pendings[slot] == null) {
+
+                times[slot] = now;
+
+                return 0;
+
+            }
+
+            boolean scheduled = pendings[slot] != null;
+
+            pendings[slot] = message; // Overwrite with the latest.
+
+            return scheduled ? -1 : Math.max(interval - elapsed, 1);
+
+        }
+
+        synchronized Message<?> release(int slot, long now) {
+
+            Message<?> message = pendings[slot];
+
+            pendings[slot] = null;
+
+            if (message != null) {
+                times[slot] = now;
+                releases[slot] = message;
+            }
+
+            return message;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,531 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IEngine;
+import com.dukascopy.api.IMessage;
+import com.dukascopy.api.IOrder;
+import com.dukascopy.api.JFException;
+import com.google.common.annotations.VisibleForTesting;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Histogram;
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Clock;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ORDER_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ORDER_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ORDER_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_ORDER_TIMEOUT;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_ORDER;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_ORDER_CANCEL;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_ORDER_MODIFY;
+import static com.after_sunrise.dukascopy.proxy.Config.ENDPOINT_ORDER_SUBMIT;
+import static com.after_sunrise.dukascopy.proxy.Config.TOPIC_ORDER;
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static java.util.Objects.requireNonNullElse;
+import static java.util.Objects.requireNonNullElseGet;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Submits, modifies and cancels the orders on the primary connection. Requests are executed on the strategy thread,
+ * and the requests arriving while the previous task is pending are executed together in the next single task.
+ * <p>
+ * STOMP requests are acknowledged to the requesting session only ({@code /user/topic/order}), followed by the
+ * subsequent executions of the order correlated by the request {@code id}. REST requests are acknowledged in the
+ * response. Order entry is disabled unless {@link Config#CK_ORDER_ENABLED} is configured.
+ * <p>
+ * Each request is claimed exactly once, either by the task to be executed or by the timeout to be rejected, hence the
+ * orders rejected to the client are never submitted afterwards. Queued requests are rejected when the primary context
+ * is started or stopped, and the executions are no longer correlated once the context or the session is gone.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@RestController
+public class Trader implements Listener, ApplicationListener<SessionDisconnectEvent> {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+
+    private final Configuration configuration;
+
+    private final SimpMessageSendingOperations template;
+
+    private final boolean enabled;
+
+    private final AtomicReference<IContext> context = new AtomicReference<>();
+
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final ConcurrentMap<String, Pending> pendings = new ConcurrentHashMap<>();
+
+    private final Histogram submitLatency;
+
+    private final Histogram fillLatency;
+
+    @Autowired
+    public Trader(Clock clock, Configuration configuration,
+                  SimpMessageSendingOperations template, CollectorRegistry registry) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.configuration = Objects.requireNonNull(configuration, "Configuration is required.");
+
+        this.template = Objects.requireNonNull(template, "SimpMessageSendingOperations is required.");
+
+        Objects.requireNonNull(registry, "CollectorRegistry is required.");
+
+        this.enabled = configuration.getBoolean(CK_ORDER_ENABLED, CV_ORDER_ENABLED);
+
+        this.submitLatency = Histogram.build().name("dukas_proxy_order_submit_seconds")
+                .help("Elapsed time between the receipt of the order request and its submission upstream.")
+                .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1).register(registry);
+
+        this.fillLatency = Histogram.build().name("dukas_proxy_order_fill_seconds")
+                .help("Elapsed time between the submission of the order and its first fill.")
+                .buckets(0.001, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10).register(registry);
+
+    }
+
+    @Override
+    public void onStart(int index, IContext context) {
+
+        if (index != 0) {
+            return;
+        }
+
+        this.context.set(context);
+
+        reset("Context is restarted.");
+
+    }
+
+    @Override
+    public void onStop(int index) {
+
+        if (index != 0) {
+            return;
+        }
+
+        this.context.set(null);
+
+        reset("Context is stopped.");
+
+    }
+
+    /**
+     * Discards the task which may never be executed by the previous context, along with the requests queued for it.
+     */
+    private void reset(String reason) {
+
+        scheduled.set(false);
+
+        rejectAll(reason);
+
+        pendings.clear();
+
+    }
+
+    @Override
+    public void onApplicationEvent(SessionDisconnectEvent event) {
+
+        String session = event.getSessionId();
+
+        if (session != null) {
+            pendings.values().removeIf(p -> session.equals(p.session));
+        }
+
+    }
+
+    @PostMapping(path = ENDPOINT_ORDER)
+    @ResponseBody
+    public DeferredResult<Order> submitOrder(@RequestBody Order message) {
+        return reply(request(Action.SUBMIT, message, null));
+    }
+
+    @PatchMapping(path = ENDPOINT_ORDER)
+    @ResponseBody
+    public DeferredResult<Order> modifyOrder(@RequestBody Order message) {
+        return reply(request(Action.MODIFY, message, null));
+    }
+
+    @DeleteMapping(path = ENDPOINT_ORDER)
+    @ResponseBody
+    public DeferredResult<Order> cancelOrder(@RequestBody Order message) {
+        return reply(request(Action.CANCEL, message, null));
+    }
+
+    @MessageMapping(ENDPOINT_ORDER_SUBMIT)
+    public void submitOrder(@Payload Order message,
+                            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String session) {
+        request(Action.SUBMIT, message, session).thenAccept(order -> send(session, order));
+    }
+
+    @MessageMapping(ENDPOINT_ORDER_MODIFY)
+    public void modifyOrder(@Payload Order message,
+                            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String session) {
+        request(Action.MODIFY, message, session).thenAccept(order -> send(session, order));
+    }
+
+    @MessageMapping(ENDPOINT_ORDER_CANCEL)
+    public void cancelOrder(@Payload Order message,
+                            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String session) {
+        request(Action.CANCEL, message, session).thenAccept(order -> send(session, order));
+    }
+
+    private DeferredResult<Order> reply(CompletableFuture<Order> future) {
+
+        DeferredResult<Order> result = new DeferredResult<>();
+
+        future.thenAccept(result::setResult);
+
+        return result;
+
+    }
+
+    @VisibleForTesting
+    void send(String session, Order order) {
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(session);
+        accessor.setLeaveMutable(true);
+
+        template.convertAndSendToUser(session, TOPIC_ORDER, order, accessor.getMessageHeaders());
+
+    }
+
+    /**
+     * Queues the request, and schedules a task on the strategy thread unless already scheduled.
+     *
+     * @return Acknowledgement of the request, completed with the rejection on failure or timeout.
+     */
+    @VisibleForTesting
+    CompletableFuture<Order> request(Action action, Order message, String session) {
+
+        Order order = requireNonNullElseGet(message, ImmutableOrder::of);
+
+        logger.debug("Order request : {} - {}", action, order);
+
+        CompletableFuture<Order> future = new CompletableFuture<>();
+
+        if (!enabled) {
+
+            future.complete(reject(order, "Order entry is disabled."));
+
+            return future;
+
+        }
+
+        long millis = configuration.getLong(CK_ORDER_TIMEOUT, CV_ORDER_TIMEOUT.toMillis());
+
+        Request request = new Request(action, order, session, System.nanoTime(), future);
+
+        CompletableFuture.delayedExecutor(millis, MILLISECONDS).execute(() -> {
+            if (request.claim()) {
+                future.complete(reject(order, "Timed out."));
+            }
+        });
+
+        requests.add(request);
+
+        if (scheduled.compareAndSet(false, true)) {
+
+            IContext c = context.get();
+
+            try {
+
+                if (c == null) {
+                    throw new IllegalStateException("Context is not started.");
+                }
+
+                c.executeTask(() -> flush(c));
+
+            } catch (RuntimeException e) {
+
+                scheduled.set(false);
+
+                rejectAll(e.getMessage());
+
+            }
+
+        }
+
+        return future;
+
+    }
+
+    private void rejectAll(String reason) {
+
+        for (Request r = requests.poll(); r != null; r = requests.poll()) {
+            if (r.claim()) {
+                r.future.complete(reject(r.order, reason));
+            }
+        }
+
+    }
+
+    /**
+     * Executes all of the queued requests, on the strategy thread. Requests already rejected on timeout are skipped.
+     */
+    @VisibleForTesting
+    Void flush(IContext c) {
+
+        scheduled.set(false); // Subsequent requests will schedule another task.
+
+        IEngine engine = c.getEngine();
+
+        for (Request r = requests.poll(); r != null; r = requests.poll()) {
+
+            if (!r.claim()) {
+                continue;
+            }
+
+            try {
+
+                r.future.complete(execute(engine, r));
+
+            } catch (JFException | RuntimeException e) {
+
+                logger.warn("Order failure : {} - {}", r.action, r.order, e);
+
+                r.future.complete(reject(r.order, e.getMessage()));
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    @VisibleForTesting
+    Order execute(IEngine engine, Request r) throws JFException {
+
+        Order o = r.order;
+
+        if (r.action == Action.SUBMIT) {
+
+            String label = requireNonNullElseGet(o.getLabel(), this::createLabel);
+
+            IOrder order = engine.submitOrder(label, o.getInstrument(), o.getCommand(),
+                    requireNonNullElse(o.getAmount(), 0.0),
+                    requireNonNullElse(o.getPrice(), 0.0),
+                    requireNonNullElse(o.getSlippage(), -1.0),
+                    requireNonNullElse(o.getStopLoss(), 0.0),
+                    requireNonNullElse(o.getTakeProfit(), 0.0));
+
+            long now = System.nanoTime();
+
+            submitLatency.observe((now - r.nanos) / 1e9);
+
+            pendings.put(label, new Pending(o.getId(), r.session, now));
+
+            return convert(o.getId(), TRUE, null, order);
+
+        }
+
+        IOrder order = engine.getOrder(o.getLabel());
+
+        if (order == null) {
+            return reject(o, "Order not found.");
+        }
+
+        if (r.action == Action.CANCEL) {
+
+            order.close();
+
+            return convert(o.getId(), TRUE, null, order);
+
+        }
+
+        if (o.getAmount() != null) {
+            order.setRequestedAmount(o.getAmount());
+        }
+
+        if (o.getPrice() != null) {
+            order.setOpenPrice(o.getPrice());
+        }
+
+        if (o.getStopLoss() != null) {
+            order.setStopLossPrice(o.getStopLoss());
+        }
+
+        if (o.getTakeProfit() != null) {
+            order.setTakeProfitPrice(o.getTakeProfit());
+        }
+
+        return convert(o.getId(), TRUE, null, order);
+
+    }
+
+    /**
+     * Generates the label satisfying the upstream constraint, which is alphanumeric (and underscore) starting with
+     * an alphabet.
+     */
+    @VisibleForTesting
+    String createLabel() {
+        return "dukas_" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * Correlates the order messages to the request, and notifies the requesting session if any.
+     */
+    @Override
+    public void onMessage(IMessage message) {
+
+        IOrder order = message == null ? null : message.getOrder();
+
+        if (order == null || message.getType() == null) {
+            return;
+        }
+
+        Pending pending = pendings.get(order.getLabel());
+
+        if (pending == null) {
+            return; // Not requested through this instance.
+        }
+
+        Boolean success = TRUE;
+
+        switch (message.getType()) {
+            case ORDER_FILL_OK:
+                if (!pending.filled) {
+                    pending.filled = true;
+                    fillLatency.observe((System.nanoTime() - pending.nanos) / 1e9);
+                }
+                break;
+            case ORDER_SUBMIT_REJECTED:
+            case ORDER_FILL_REJECTED:
+                pendings.remove(order.getLabel());
+                success = FALSE;
+                break;
+            case ORDER_CLOSE_OK:
+                pendings.remove(order.getLabel());
+                break;
+            case ORDER_CHANGED_REJECTED:
+            case ORDER_CLOSE_REJECTED:
+                success = FALSE;
+                break;
+            default:
+                break;
+        }
+
+        if (pending.session != null) {
+            send(pending.session, convert(pending.id, success, message.getContent(), order));
+        }
+
+    }
+
+    @VisibleForTesting
+    Order convert(String id, Boolean success, String reason, IOrder order) {
+
+        ImmutableOrder.Builder builder = ImmutableOrder.builder()
+                .id(id).epoch(clock.instant()).success(success).reason(reason);
+
+        if (order != null) {
+            builder.label(order.getLabel())
+                    .instrument(order.getInstrument())
+                    .command(order.getOrderCommand())
+                    .amount(order.getAmount())
+                    .price(order.getOpenPrice())
+                    .stopLoss(order.getStopLossPrice())
+                    .takeProfit(order.getTakeProfitPrice())
+                    .state(order.getState());
+        }
+
+        return builder.build();
+
+    }
+
+    @VisibleForTesting
+    Order reject(Order order, String reason) {
+        return ImmutableOrder.copyOf(order).withEpoch(clock.instant()).withSuccess(FALSE).withReason(reason);
+    }
+
+    @VisibleForTesting
+    enum Action {
+        SUBMIT, MODIFY, CANCEL
+    }
+
+    @VisibleForTesting
+    static class Request {
+
+        private final Action action;
+
+        private final Order order;
+
+        private final String session;
+
+        private final long nanos;
+
+        private final CompletableFuture<Order> future;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Request(Action action, Order order, String session, long nanos, CompletableFuture<Order> future) {
+            this.action = action;
+            this.order = order;
+            this.session = session;
+            this.nanos = nanos;
+            this.future = future;
+        }
+
+        /**
+         * @return {@code true} if neither executed nor rejected yet.
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+    }
+
+    private static class Pending {
+
+        private final String id;
+
+        private final String session;
+
+        private final long nanos;
+
+        private boolean filled;
+
+        private Pending(String id, String session, long nanos) {
+            this.id = id;
+            this.session = session;
+            this.nanos = nanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.after_sunrise.dukascopy.proxy.Archive.INDEX_SIZE;
+import static com.after_sunrise.dukascopy.proxy.Archive.SUFFIX_DATA;
+import static com.after_sunrise.dukascopy.proxy.Archive.SUFFIX_INDEX;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_BLOCK;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.GSON;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class ArchiveTest {
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    private static final long TODAY = 18_000;
+
+    private static final long MIDNIGHT = TODAY * DAY;
+
+    private static final int SCALE = 3;
+
+    @TempDir
+    Path directory;
+
+    private Archive target;
+
+    @BeforeEach
+    void setUp() {
+
+        target = new Archive(new MapConfiguration(Map.of(
+                CK_ARCHIVE_PATH, directory.toString(),
+                CK_ARCHIVE_BLOCK, 3
+        )), GSON);
+
+        target.afterPropertiesSet();
+
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        target.destroy();
+    }
+
+    private static List<Map<?, ?>> query(Archive archive, long from, long to) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        archive.query(Instrument.USDJPY, from, to, output);
+
+        List<Map<?, ?>> values = new ArrayList<>();
+
+        for (String line : new String(output.toByteArray(), UTF_8).split("\n")) {
+
+            if (!line.isEmpty()) {
+                values.add(GSON.fromJson(line, Map.class));
+            }
+
+        }
+
+        return values;
+
+    }
+
+    private static long getTime(Map<?, ?> value) {
+        return ((Number) value.get("tt")).longValue();
+    }
+
+    @Test
+    void testColumn_Full() {
+
+        Archive.Column column = new Archive.Column(3, SCALE);
+
+        assertNull(column.append(MIDNIGHT + 1, 108.001, 108.000, 1.0, 2.0));
+
+        assertNull(column.append(MIDNIGHT + 2, 108.002, 108.001, 1.0, 2.0));
+
+        assertNotNull(column.append(MIDNIGHT + 3, 108.003, 108.002, 1.0, 2.0));
+
+        assertNull(column.drain());
+
+    }
+
+    @Test
+    void testColumn_Rollover() {
+
+        Archive.Column column = new Archive.Column(3, SCALE);
+
+        assertNull(column.append(MIDNIGHT - 1, 108.001, 108.000, 1.0, 2.0));
+
+        assertNotNull(column.append(MIDNIGHT, 108.002, 108.001, 1.0, 2.0)); // Previous day, excluding the tick.
+
+        assertNull(column.append(MIDNIGHT + 1, 108.003, 108.002, 1.0, 2.0));
+
+        assertNotNull(column.drain());
+
+        assertNull(column.drain());
+
+    }
+
+    @Test
+    void testQuery() throws IOException {
+
+        Archive.Column column = new Archive.Column(3, SCALE);
+
+        long[] times = {MIDNIGHT - 2, MIDNIGHT - 1, MIDNIGHT, MIDNIGHT + 1, MIDNIGHT + 2, MIDNIGHT + 3, MIDNIGHT + 4};
+
+        for (int i = 0; i < times.length; i++) {
+
+            Archive.Block block = column.append(times[i], 108.0 + i * 0.001, 108.0 - i * 0.001, i, i * 2);
+
+            if (block != null) {
+                target.write(Instrument.USDJPY, block);
+            }
+
+        }
+
+        target.write(Instrument.USDJPY, column.drain());
+
+        assertEquals(INDEX_SIZE, Files.size(target.getPath(Instrument.USDJPY, TODAY - 1, SUFFIX_INDEX)));
+
+        assertEquals(INDEX_SIZE * 2, Files.size(target.getPath(Instrument.USDJPY, TODAY, SUFFIX_INDEX)));
+
+        assertFalse(Files.exists(target.getPath(Instrument.USDJPY, TODAY + 1, SUFFIX_DATA)));
+
+        List<Map<?, ?>> values = query(target, MIDNIGHT - DAY, MIDNIGHT + DAY * 2);
+
+        assertEquals(times.length, values.size());
+
+        for (int i = 0; i < times.length; i++) {
+
+            Map<?, ?> value = values.get(i);
+
+            assertEquals("USDJPY", value.get("in"));
+
+            assertEquals(SCALE, ((Number) value.get("is")).intValue());
+
+            assertEquals(times[i], getTime(value));
+
+            assertEquals(108.0 + i * 0.001, ((Number) value.get("ap")).doubleValue(), 1e-9);
+
+            assertEquals(108.0 - i * 0.001, ((Number) value.get("bp")).doubleValue(), 1e-9);
+
+            assertEquals(i, ((Number) value.get("av")).doubleValue());
+
+            assertEquals(i * 2, ((Number) value.get("bv")).doubleValue());
+
+        }
+
+        // Across the midnight, exclusive of the end.
+        values = query(target, MIDNIGHT - 1, MIDNIGHT + 1);
+
+        assertEquals(2, values.size());
+
+        assertEquals(MIDNIGHT - 1, getTime(values.get(0)));
+
+        assertEquals(MIDNIGHT, getTime(values.get(1)));
+
+        assertEquals(0, query(target, MIDNIGHT + 5, MIDNIGHT + DAY).size());
+
+    }
+
+    @Test
+    void testQuery_Index() throws IOException {
+
+        Archive.Column column = new Archive.Column(2, SCALE);
+
+        for (int i = 0; i < 6; i++) {
+
+            Archive.Block block = column.append(MIDNIGHT + i * 10, 108.0, 107.9, 1.0, 1.0);
+
+            if (block != null) {
+                target.write(Instrument.USDJPY, block);
+            }
+
+        }
+
+        // Blocks of [0, 10], [20, 30] and [40, 50], with only the second one overlapping.
+        Archive archive = spy(target);
+
+        List<Map<?, ?>> values = query(archive, MIDNIGHT + 15, MIDNIGHT + 35);
+
+        assertEquals(2, values.size());
+
+        assertEquals(MIDNIGHT + 20, getTime(values.get(0)));
+
+        assertEquals(MIDNIGHT + 30, getTime(values.get(1)));
+
+        verify(archive, times(1)).read(eq(Instrument.USDJPY), any(), eq(MIDNIGHT + 15), eq(MIDNIGHT + 35), any());
+
+    }
+
+}
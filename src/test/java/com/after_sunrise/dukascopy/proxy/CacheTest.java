@@ -0,0 +1,213 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IHistory;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.after_sunrise.dukascopy.proxy.Cache.BAR_CHUNK;
+import static com.after_sunrise.dukascopy.proxy.Cache.TICK_CHUNK;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CACHE_CHUNKS;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_CACHE_SETTLE;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class CacheTest {
+
+    private static final long HOUR = HOURS.toMillis(1);
+
+    private static final long MINUTE = MINUTES.toMillis(1);
+
+    private static final long SETTLE = CV_CACHE_SETTLE.toMillis();
+
+    private Cache target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        target = spy(new Cache(new MapConfiguration(Map.of(CK_CACHE_CHUNKS, 3)), mock(History.class)));
+
+        Cache.Chunk empty = new Cache.Chunk(0, new Cache.Columns(0, 0, 0).encode(), true);
+
+        doReturn(CompletableFuture.completedFuture(empty))
+                .when(target).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testGetLength() {
+
+        assertEquals(TICK_CHUNK, Cache.getLength(null));
+        assertEquals(0, Cache.getLength(Period.TICK));
+        assertEquals(MINUTE * BAR_CHUNK, Cache.getLength(Period.ONE_MIN));
+        assertEquals(HOUR * BAR_CHUNK, Cache.getLength(Period.ONE_HOUR));
+        assertEquals(DAYS.toMillis(1) * BAR_CHUNK, Cache.getLength(Period.DAILY));
+        assertEquals(0, Cache.getLength(Period.WEEKLY)); // Not aligned to the days.
+
+    }
+
+    @Test
+    void testRequest_Ticks() {
+
+        ResponseEntity<List<Map<String, Object>>> response =
+                target.request(Instrument.USDJPY, null, null, HOUR * 10 + 1, HOUR * 12 + 1).join();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        assertEquals(0, response.getBody().size());
+
+        verify(target).lookup(Instrument.USDJPY, null, null, HOUR * 10, TICK_CHUNK);
+        verify(target).lookup(Instrument.USDJPY, null, null, HOUR * 11, TICK_CHUNK);
+        verify(target).lookup(Instrument.USDJPY, null, null, HOUR * 12, TICK_CHUNK);
+        verify(target, times(3)).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testRequest_Ticks_Aligned() {
+
+        target.request(Instrument.USDJPY, null, null, HOUR * 10, HOUR * 12).join();
+
+        verify(target).lookup(Instrument.USDJPY, null, null, HOUR * 10, TICK_CHUNK);
+        verify(target).lookup(Instrument.USDJPY, null, null, HOUR * 11, TICK_CHUNK);
+        verify(target, times(2)).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testRequest_Bars() {
+
+        long length = MINUTE * BAR_CHUNK;
+
+        target.request(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, -1, length + 1).join();
+
+        verify(target).lookup(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, -length, length);
+        verify(target).lookup(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, length);
+        verify(target).lookup(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, length, length);
+        verify(target, times(3)).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testRequest_Invalid() {
+
+        assertEquals(HttpStatus.BAD_REQUEST, target.request(
+                Instrument.USDJPY, null, null, 0, HOUR * 3 + 1).join().getStatusCode()); // Too many chunks.
+
+        assertEquals(HttpStatus.BAD_REQUEST, target.request(
+                Instrument.USDJPY, null, null, HOUR, HOUR).join().getStatusCode());
+
+        assertEquals(HttpStatus.BAD_REQUEST, target.request(
+                null, null, null, 0, HOUR).join().getStatusCode());
+
+        assertEquals(HttpStatus.BAD_REQUEST, target.request(
+                Instrument.USDJPY, Period.TICK, OfferSide.ASK, 0, HOUR).join().getStatusCode());
+
+        assertEquals(HttpStatus.BAD_REQUEST, target.request(
+                Instrument.USDJPY, Period.WEEKLY, OfferSide.ASK, 0, HOUR).join().getStatusCode());
+
+        verify(target, never()).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testRequest_Rejected() {
+
+        doReturn(CompletableFuture.failedFuture(new RejectedExecutionException()))
+                .when(target).lookup(any(), any(), any(), anyLong(), anyLong());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, target.request(
+                Instrument.USDJPY, null, null, 0, HOUR * 2).join().getStatusCode());
+
+        verify(target, times(1)).lookup(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+    @Test
+    void testFetch_Ticks() throws Exception {
+
+        IHistory history = mock(IHistory.class);
+
+        when(history.getTimeOfLastTick(Instrument.USDJPY)).thenReturn(HOUR + MINUTE);
+
+        target.fetch(history, Instrument.USDJPY, null, null, HOUR, HOUR * 2);
+
+        verify(history).getTicks(Instrument.USDJPY, HOUR, HOUR + MINUTE); // Up to the last tick.
+
+        target.fetch(history, Instrument.USDJPY, null, null, 0, HOUR);
+
+        verify(history).getTicks(Instrument.USDJPY, 0, HOUR - 1); // Exclusive of the end.
+
+        target.fetch(history, Instrument.USDJPY, null, null, HOUR * 2, HOUR * 3);
+
+        verify(history, times(2)).getTicks(any(), anyLong(), anyLong()); // Not yet available.
+
+    }
+
+    @Test
+    void testFetch_Bars() throws Exception {
+
+        IHistory history = mock(IHistory.class);
+
+        long length = MINUTE * BAR_CHUNK;
+
+        // Settled, up to the last bar of the chunk.
+        when(history.getTimeOfLastTick(Instrument.USDJPY)).thenReturn(length + SETTLE);
+
+        target.fetch(history, Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, length);
+
+        verify(history).getBars(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, length - MINUTE);
+
+        verify(history, never()).getBar(any(), any(), any(), anyInt());
+
+        // In progress, up to the last completed bar.
+        IBar bar = mock(IBar.class);
+
+        when(bar.getTime()).thenReturn(MINUTE * 10);
+
+        when(history.getTimeOfLastTick(Instrument.USDJPY)).thenReturn(MINUTE * 11 + 1);
+
+        when(history.getBar(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 1)).thenReturn(bar);
+
+        target.fetch(history, Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, length);
+
+        verify(history).getBars(Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, MINUTE * 10);
+
+        // In progress, without any bars completed within the chunk.
+        when(bar.getTime()).thenReturn(-MINUTE);
+
+        target.fetch(history, Instrument.USDJPY, Period.ONE_MIN, OfferSide.BID, 0, length);
+
+        verify(history, times(2)).getBars(any(), any(), any(), anyLong(), anyLong());
+
+    }
+
+}
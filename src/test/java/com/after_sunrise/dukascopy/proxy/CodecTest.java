@@ -0,0 +1,113 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class CodecTest {
+
+    private static byte[] writeDeltas(long[] values, int count) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Codec.writeDeltas(out, values, count);
+        }
+
+        return bytes.toByteArray();
+
+    }
+
+    private static long[] readDeltas(byte[] bytes, int count) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return Codec.readDeltas(in, count);
+        }
+
+    }
+
+    @Test
+    void testDeltas() throws IOException {
+
+        long[] values = {1_500_000_000_000L, 1_500_000_000_001L, 1_500_000_000_001L, 1_499_999_999_000L, 0, -1, 1};
+
+        byte[] bytes = writeDeltas(values, values.length);
+
+        assertArrayEquals(values, readDeltas(bytes, values.length));
+
+        // Negative deltas in a single byte.
+        assertEquals(5, writeDeltas(new long[]{1, 2, 3, 2, 1}, 5).length);
+
+    }
+
+    @Test
+    void testDeltas_Extreme() throws IOException {
+
+        long[] values = {Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+
+        byte[] bytes = writeDeltas(values, values.length);
+
+        assertArrayEquals(values, readDeltas(bytes, values.length));
+
+        // Overflowing deltas wrap around : MIN to MAX is -1, and MAX to MIN is +1, in a single byte each.
+        assertEquals(10 + 1 + 1 + 10 + 10 + 10 + 10, bytes.length);
+
+    }
+
+    @Test
+    void testDeltas_Count() throws IOException {
+
+        long[] values = {3, 2, 1};
+
+        assertEquals(0, writeDeltas(values, 0).length);
+
+        assertArrayEquals(new long[0], readDeltas(new byte[0], 0));
+
+        byte[] bytes = writeDeltas(values, 2);
+
+        assertArrayEquals(Arrays.copyOf(values, 2), readDeltas(bytes, 2));
+
+        assertThrows(EOFException.class, () -> readDeltas(bytes, 3));
+
+        assertThrows(EOFException.class, () -> readDeltas(writeDeltas(new long[]{Long.MAX_VALUE}, 1), 2));
+
+    }
+
+    @Test
+    void testDoubles() throws IOException {
+
+        double[] values = {0.0, -0.0, 1.5, -123.456, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Codec.writeDoubles(out, values, values.length);
+        }
+
+        assertEquals(values.length * Double.BYTES, bytes.size());
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+
+            assertArrayEquals(values, Codec.readDoubles(in, values.length));
+
+            assertThrows(EOFException.class, () -> Codec.readDoubles(in, 1));
+
+        }
+
+    }
+
+}
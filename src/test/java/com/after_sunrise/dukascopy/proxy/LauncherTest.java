@@ -44,7 +44,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  */
 class LauncherTest {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
 
         //
         // Configure environment variables.
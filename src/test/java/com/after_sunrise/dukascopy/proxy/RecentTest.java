@@ -0,0 +1,130 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.Instrument;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RECENT_COUNT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class RecentTest {
+
+    private Recent target;
+
+    @BeforeEach
+    void setUp() {
+
+        target = new Recent(mock(Clock.class), new MapConfiguration(Map.of(CK_RECENT_COUNT, 4)),
+                mock(SimpMessageSendingOperations.class));
+
+    }
+
+    @Test
+    void testGetCapacity() {
+
+        assertEquals(0, Recent.getCapacity(Integer.MIN_VALUE));
+        assertEquals(0, Recent.getCapacity(-1));
+        assertEquals(0, Recent.getCapacity(0));
+        assertEquals(1, Recent.getCapacity(1));
+        assertEquals(2, Recent.getCapacity(2));
+        assertEquals(4, Recent.getCapacity(3));
+        assertEquals(4, Recent.getCapacity(4));
+        assertEquals(8, Recent.getCapacity(5));
+        assertEquals(4096, Recent.getCapacity(4096));
+        assertEquals(8192, Recent.getCapacity(4097));
+        assertEquals(1 << 20, Recent.getCapacity(1 << 20));
+        assertEquals(1 << 20, Recent.getCapacity((1 << 20) + 1));
+        assertEquals(1 << 20, Recent.getCapacity(Integer.MAX_VALUE));
+
+    }
+
+    private List<Map<String, Object>> copy(Recent.Window window, long after, long since) {
+        return target.convert(Instrument.EURUSD, window.copy(after, since));
+    }
+
+    private static void assertSequences(List<Map<String, Object>> values, long... sequences) {
+
+        assertEquals(sequences.length, values.size());
+
+        for (int i = 0; i < sequences.length; i++) {
+
+            Map<String, Object> value = values.get(i);
+
+            assertEquals(sequences[i], value.get("xq"));
+
+            assertEquals(sequences[i] * 100, value.get("tt"));
+
+            assertEquals(1.0 + sequences[i], value.get("ap"));
+
+            assertEquals(1.0 - sequences[i], value.get("bp"));
+
+        }
+
+    }
+
+    @Test
+    void testWindow_Copy() {
+
+        Recent.Window window = new Recent.Window(4);
+
+        assertSequences(copy(window, 0, Long.MIN_VALUE));
+
+        for (long s = 1; s <= 3; s++) {
+            assertEquals(s, window.append(s * 100, 1.0 + s, s, s * 10, 1.0 - s, s, s * 10));
+        }
+
+        assertSequences(copy(window, 0, Long.MIN_VALUE), 1, 2, 3);
+
+        assertSequences(copy(window, 2, Long.MIN_VALUE), 3);
+
+        assertSequences(copy(window, 3, Long.MIN_VALUE));
+
+        assertSequences(copy(window, 9, Long.MIN_VALUE));
+
+        // Overwritten after the capacity.
+        for (long s = 4; s <= 6; s++) {
+            assertEquals(s, window.append(s * 100, 1.0 + s, s, s * 10, 1.0 - s, s, s * 10));
+        }
+
+        assertSequences(copy(window, 0, Long.MIN_VALUE), 3, 4, 5, 6);
+
+        assertSequences(copy(window, 4, Long.MIN_VALUE), 5, 6);
+
+        // Skipping the ones before the time, inclusive of the time.
+        assertSequences(copy(window, 0, 500), 5, 6);
+
+        assertSequences(copy(window, 0, 450), 5, 6);
+
+        assertSequences(copy(window, 5, 400), 6);
+
+        assertSequences(copy(window, 0, 601));
+
+        assertSequences(copy(window, 0, Long.MAX_VALUE));
+
+    }
+
+    @Test
+    void testWindow_Copy_Empty() {
+
+        Recent.Window window = new Recent.Window(0);
+
+        assertSequences(copy(window, 0, Long.MIN_VALUE));
+
+        Recent.Window copy = new Recent.Window(4).copy(0, Long.MIN_VALUE);
+
+        assertSequences(copy(copy, 0, Long.MIN_VALUE));
+
+    }
+
+}
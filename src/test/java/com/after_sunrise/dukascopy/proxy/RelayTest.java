@@ -0,0 +1,43 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+
+import java.util.Properties;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_RELAY_HOST;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_RELAY_PORT;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_SERVER_RELAY_PORT;
+
+/**
+ * Launches the proxy server with an embedded Artemis instance, standing in for the external STOMP broker.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class RelayTest {
+
+    public static void main(String[] args) throws Exception {
+
+        //
+        // Launch embedded broker, accepting STOMP only.
+        //
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp", "tcp://localhost:" + CV_SERVER_RELAY_PORT + "?protocols=STOMP"));
+        broker.start();
+
+        //
+        // Relay to the embedded broker.
+        //
+        Properties properties = System.getProperties();
+        properties.putIfAbsent(CK_SERVER_RELAY_HOST, "localhost");
+        properties.putIfAbsent(CK_SERVER_RELAY_PORT, String.valueOf(CV_SERVER_RELAY_PORT));
+
+        LauncherTest.main(args);
+
+    }
+
+}
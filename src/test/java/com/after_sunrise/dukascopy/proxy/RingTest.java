@@ -0,0 +1,223 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.Period;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Map;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RING_CAPACITY;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_RING_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CV_RING_CAPACITY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tails the ring file of the proxy server running on the same host (with "dukas-proxy.ring.path" configured),
+ * and logs the records with the latency from the tick time.
+ * Tests the capacity, the bars with a missing side, and the records read across the restart of the writer with another
+ * capacity.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class RingTest {
+
+    @TempDir
+    Path directory;
+
+    public static void main(String[] args) throws Exception {
+
+        Logger logger = LoggerFactory.getLogger(RingTest.class);
+
+        try (RingReader reader = new RingReader(Paths.get(args.length > 0 ? args[0] : "dukas-proxy.ring"))) {
+
+            RingReader.Record record = new RingReader.Record();
+
+            long count = 0;
+
+            while (!Thread.currentThread().isInterrupted()) {
+
+                if (!reader.poll(record)) {
+
+                    Thread.onSpinWait();
+
+                    continue;
+
+                }
+
+                if (++count % (CV_RING_CAPACITY / 64) == 0 || record.getType() == RingReader.TYPE_BAR) {
+                    logger.info("Read : {} (latency={} ms, losses={})",
+                            record, System.currentTimeMillis() - record.getTime(), reader.getLosses());
+                }
+
+            }
+
+        }
+
+    }
+
+    @Test
+    void testGetCapacity() {
+
+        assertEquals(2, Ring.getCapacity(Integer.MIN_VALUE));
+        assertEquals(2, Ring.getCapacity(0));
+        assertEquals(2, Ring.getCapacity(1));
+        assertEquals(2, Ring.getCapacity(2));
+        assertEquals(4, Ring.getCapacity(3));
+        assertEquals(65536, Ring.getCapacity(65536));
+        assertEquals(131072, Ring.getCapacity(65537));
+        assertEquals(1 << 23, Ring.getCapacity(1 << 23));
+        assertEquals(1 << 23, Ring.getCapacity((1 << 23) + 1));
+        assertEquals(1 << 23, Ring.getCapacity(Integer.MAX_VALUE));
+
+    }
+
+    private static Ring open(Path path, int capacity) throws IOException {
+
+        Ring ring = new Ring(Clock.systemUTC(), new MapConfiguration(Map.of(
+                CK_RING_PATH, path.toString(),
+                CK_RING_CAPACITY, capacity
+        )));
+
+        ring.afterPropertiesSet();
+
+        return ring;
+
+    }
+
+    private static ITick createTick(long time) {
+
+        ITick tick = mock(ITick.class);
+        when(tick.getTime()).thenReturn(time);
+        when(tick.getAsk()).thenReturn(1.2);
+        when(tick.getBid()).thenReturn(1.1);
+        when(tick.getAskVolume()).thenReturn(3.0);
+        when(tick.getBidVolume()).thenReturn(4.0);
+        return tick;
+
+    }
+
+    @Test
+    void testPoll() throws IOException {
+
+        Path path = directory.resolve("test.ring");
+
+        Ring ring = open(path, 4);
+
+        try (RingReader reader = new RingReader(path)) {
+
+            RingReader.Record record = new RingReader.Record();
+
+            assertFalse(reader.poll(record));
+
+            for (int i = 1; i <= 6; i++) {
+                ring.onTick(Instrument.EURUSD, createTick(i));
+            }
+
+            // Lapped by the writer, skipping the oldest ones overwritten.
+            for (int i = 3; i <= 6; i++) {
+                assertTrue(reader.poll(record));
+                assertEquals(i, record.getSequence());
+                assertEquals(RingReader.TYPE_TICK, record.getType());
+                assertEquals(Instrument.EURUSD, record.getInstrument());
+                assertEquals(i, record.getTime());
+                assertEquals(1.2, record.getAsk());
+                assertEquals(1.1, record.getBid());
+                assertEquals(3.0, record.getAskVolume());
+                assertEquals(4.0, record.getBidVolume());
+            }
+
+            assertFalse(reader.poll(record));
+
+            assertEquals(2, reader.getLosses());
+
+            // Restarted with another capacity, replacing the file.
+            ring.destroy();
+
+            ring = open(path, 8);
+
+            assertFalse(reader.poll(record)); // Reopened.
+
+            ring.onTick(Instrument.USDJPY, createTick(7));
+
+            assertTrue(reader.poll(record));
+            assertEquals(1, record.getSequence());
+            assertEquals(Instrument.USDJPY, record.getInstrument());
+            assertEquals(7, record.getTime());
+
+            assertFalse(reader.poll(record));
+
+        } finally {
+
+            ring.destroy();
+
+        }
+
+    }
+
+    @Test
+    void testOnBar() throws IOException {
+
+        Path path = directory.resolve("test.ring");
+
+        Ring ring = open(path, 4);
+
+        try (RingReader reader = new RingReader(path)) {
+
+            RingReader.Record record = new RingReader.Record();
+
+            IBar bar = mock(IBar.class);
+            when(bar.getTime()).thenReturn(123L);
+            when(bar.getOpen()).thenReturn(1.1);
+            when(bar.getHigh()).thenReturn(1.4);
+            when(bar.getLow()).thenReturn(1.0);
+            when(bar.getClose()).thenReturn(1.2);
+            when(bar.getVolume()).thenReturn(5.0);
+
+            ring.onBar(Instrument.EURUSD, Period.ONE_MIN, null, null);
+
+            assertFalse(reader.poll(record));
+
+            ring.onBar(Instrument.EURUSD, Period.ONE_MIN, bar, null);
+
+            assertTrue(reader.poll(record));
+            assertEquals(RingReader.TYPE_BAR, record.getType());
+            assertEquals(Period.ONE_MIN, record.getPeriod());
+            assertEquals(123L, record.getTime());
+            assertEquals(1.1, record.getBarValue(0));
+            assertEquals(5.0, record.getBarValue(4));
+            assertTrue(Double.isNaN(record.getBarValue(5)));
+            assertTrue(Double.isNaN(record.getBarValue(9)));
+
+            ring.onBar(Instrument.EURUSD, Period.ONE_MIN, null, bar);
+
+            assertTrue(reader.poll(record));
+            assertEquals(123L, record.getTime());
+            assertTrue(Double.isNaN(record.getBarValue(0)));
+            assertTrue(Double.isNaN(record.getBarValue(4)));
+            assertEquals(1.1, record.getBarValue(5));
+            assertEquals(5.0, record.getBarValue(9));
+
+        } finally {
+
+            ring.destroy();
+
+        }
+
+    }
+
+}
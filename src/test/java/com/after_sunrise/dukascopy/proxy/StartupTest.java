@@ -0,0 +1,70 @@
+package com.after_sunrise.dukascopy.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.proxy.Config.CK_CONNECTION_ENABLED;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SERVER_PORT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_SNAPSHOT_PATH;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STARTUP_EXIT;
+import static com.after_sunrise.dukascopy.proxy.Config.CK_STARTUP_LAZY;
+
+/**
+ * Benchmarks the startup time of the installed distribution ("gradlew installDist"), with and without the fast-start
+ * mode. Each launch exits as soon as the application is ready, without connecting.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+class StartupTest {
+
+    public static void main(String[] args) throws Exception {
+
+        File home = new File(args.length > 0 ? args[0] : "build/install/dukas-proxy");
+
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String common = String.join(" ", "-D" + CK_CONNECTION_ENABLED + "=false", "-D" + CK_STARTUP_EXIT + "=true",
+                "-D" + CK_SERVER_PORT + "=0", "-D" + CK_SNAPSHOT_PATH + "=");
+
+        Map<String, String> modes = new LinkedHashMap<>();
+        modes.put("baseline", "-Xshare:off -D" + CK_STARTUP_LAZY + "=false");
+        modes.put("cds", "-D" + CK_STARTUP_LAZY + "=false");
+        modes.put("cds+lazy", "-D" + CK_STARTUP_LAZY + "=true");
+
+        Logger logger = LoggerFactory.getLogger(StartupTest.class);
+
+        for (Map.Entry<String, String> entry : modes.entrySet()) {
+
+            long total = 0;
+
+            for (int i = 0; i < iterations; i++) {
+
+                ProcessBuilder builder = new ProcessBuilder("sh", "bin/dukas-proxy").directory(home).inheritIO();
+
+                builder.environment().put("DUKAS_PROXY_OPTS", common + " " + entry.getValue());
+
+                long start = System.nanoTime();
+
+                int code = builder.start().waitFor();
+
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                logger.info("Launched : {} #{} = {} ms (exit={})", entry.getKey(), i, millis, code);
+
+                total += millis;
+
+            }
+
+            logger.info("Average : {} = {} ms", entry.getKey(), total / Math.max(iterations, 1));
+
+        }
+
+    }
+
+}